@@ -0,0 +1,22 @@
+package com.ronaldbit.mopla.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entrada del jar de benchmarks: igual que {@code org.openjdk.jmh.Main}, pero por defecto mide
+ * asignaciones ({@code -prof gc}) y guarda el resultado en JSON ({@code target/jmh-result.json})
+ * para comparar entre versiones. Cualquier argumento de JMH sigue funcionando (p. ej. un regex).
+ */
+public final class BenchmarkMain {
+  private BenchmarkMain() {}
+
+  public static void main(String[] args) throws Exception {
+    List<String> a = new ArrayList<>(Arrays.asList(args));
+    if (!a.contains("-prof")) { a.add("-prof"); a.add("gc"); }
+    if (!a.contains("-rf"))   { a.add("-rf"); a.add("json"); }
+    if (!a.contains("-rff"))  { a.add("-rff"); a.add("target/jmh-result.json"); }
+    org.openjdk.jmh.Main.main(a.toArray(new String[0]));
+  }
+}
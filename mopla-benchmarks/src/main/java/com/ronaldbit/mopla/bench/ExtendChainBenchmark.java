@@ -0,0 +1,45 @@
+package com.ronaldbit.mopla.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** Cadena @extend de {@code depth} niveles; cada nivel envuelve la sección del anterior. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtendChainBenchmark {
+  @Param({"2", "6"})
+  public int depth;
+
+  private Templates t;
+  private Map<String,Object> vars;
+
+  @Setup
+  public void setup() {
+    Map<String,String> files = new HashMap<>();
+    files.put("layout0.html", "<html><head><title>@yield(\"title\")</title></head><body>@yield(\"main\")</body></html>");
+    for (int i=1;i<depth;i++) {
+      files.put("layout" + i + ".html", "@extend(\"layout" + (i-1) + ".html\")"
+          + "@section(\"title\")@yield(\"title\") | nivel " + i + "@endsection"
+          + "@section(\"main\")<div class=\"l" + i + "\">@yield(\"main\")</div>@endsection");
+    }
+    files.put("page.html", "@extend(\"layout" + (depth-1) + ".html\")"
+        + "@section(\"title\")@var(title)@endsection"
+        + "@section(\"main\")<p>@var(body)</p>@endsection");
+    t = new Templates(files);
+    vars = Map.of("title", "Inicio", "body", "Contenido de la página");
+  }
+
+  @TearDown
+  public void tearDown() throws Exception { t.close(); }
+
+  @Benchmark
+  public String render() throws Exception {
+    return t.mopla.render("page.html", vars);
+  }
+}
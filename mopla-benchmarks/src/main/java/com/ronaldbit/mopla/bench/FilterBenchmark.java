@@ -0,0 +1,41 @@
+package com.ronaldbit.mopla.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** Filtros en cada fila: formato de números y fechas, más una cadena de filtros de texto. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+  @Param({"1000"})
+  public int rows;
+
+  private Templates t;
+  private Map<String,Object> vars;
+
+  @Setup
+  public void setup() {
+    t = new Templates(Map.of("report.html",
+        "@foreach(r in rows)<tr><td>@var(r.date|date:\"dd/MM/yyyy\")</td><td>@var(r.amount|number:\"#,##0.00\")</td>"
+      + "<td>@var(r.label|trim|capitalize|truncate:20)</td></tr>@endforeach"));
+    List<Map<String,Object>> list = new ArrayList<>(rows);
+    LocalDate d = LocalDate.of(2024, 1, 1);
+    for (int i=0;i<rows;i++) list.add(Map.of("date", d.plusDays(i), "amount", i * 1234.567, "label", "  movimiento número " + i + " del mes  "));
+    vars = Map.of("rows", list);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception { t.close(); }
+
+  @Benchmark
+  public String render() throws Exception {
+    return t.mopla.render("report.html", vars);
+  }
+}
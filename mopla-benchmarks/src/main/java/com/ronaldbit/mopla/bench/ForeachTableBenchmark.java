@@ -0,0 +1,45 @@
+package com.ronaldbit.mopla.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** Tabla de 10k filas con @foreach: a String y en streaming a un Writer. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForeachTableBenchmark {
+  @Param({"10000"})
+  public int rows;
+
+  private Templates t;
+  private Map<String,Object> vars;
+
+  @Setup
+  public void setup() {
+    t = new Templates(Map.of("table.html",
+        "<table>@foreach(row in rows)<tr><td>@var(row_index)</td><td>@var(row.name)</td><td>@var(row.email)</td>"
+      + "@if(row.active)<td>activo</td>@else<td>-</td>@endif</tr>@endforeach</table>"));
+    List<Map<String,Object>> list = new ArrayList<>(rows);
+    for (int i=0;i<rows;i++) list.add(Map.of("name", "Usuario " + i, "email", "u" + i + "@mopla.dev", "active", i % 3 != 0));
+    vars = Map.of("rows", list);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception { t.close(); }
+
+  @Benchmark
+  public String renderToString() throws Exception {
+    return t.mopla.render("table.html", vars);
+  }
+
+  @Benchmark
+  public void renderToWriter() throws Exception {
+    t.mopla.render("table.html", vars, Writer.nullWriter());
+  }
+}
@@ -0,0 +1,44 @@
+package com.ronaldbit.mopla.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** Página armada con parciales: un @include por tarjeta (con variables locales) más cabecera y pie. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncludeBenchmark {
+  @Param({"100"})
+  public int cards;
+
+  private Templates t;
+  private Map<String,Object> vars;
+
+  @Setup
+  public void setup() {
+    t = new Templates(Map.of(
+        "page.html", "@include(\"partials/header.html\")"
+            + "@foreach(item in items)@include(\"partials/card.html\", kind:\"producto\")@endforeach"
+            + "@include(\"partials/footer.html\")",
+        "partials/header.html", "<header><h1>@var(title)</h1>@include(\"partials/nav.html\")</header>",
+        "partials/nav.html", "<nav><a href=\"/\">Inicio</a><a href=\"/productos\">Productos</a></nav>",
+        "partials/card.html", "<article class=\"@var(kind)\"><h2>@var(item.name)</h2><p>@var(item.description)</p></article>",
+        "partials/footer.html", "<footer>© Mopla</footer>"));
+    List<Map<String,Object>> items = new ArrayList<>(cards);
+    for (int i=0;i<cards;i++) items.add(Map.of("name", "Producto " + i, "description", "Descripción <corta> del producto " + i));
+    vars = Map.of("title", "Catálogo", "items", items);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception { t.close(); }
+
+  @Benchmark
+  public String render() throws Exception {
+    return t.mopla.render("page.html", vars);
+  }
+}
@@ -0,0 +1,65 @@
+package com.ronaldbit.mopla.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/** Mismo render con el modelo como Map, como POJO (getters) y como record. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+  public static class Customer {
+    private final String name; private final Address address; private final boolean vip;
+    public Customer(String name, Address address, boolean vip) { this.name = name; this.address = address; this.vip = vip; }
+    public String getName() { return name; }
+    public Address getAddress() { return address; }
+    public boolean isVip() { return vip; }
+  }
+  public static class Address {
+    private final String city; private final String street;
+    public Address(String city, String street) { this.city = city; this.street = street; }
+    public String getCity() { return city; }
+    public String getStreet() { return street; }
+  }
+  public record CustomerRecord(String name, AddressRecord address, boolean vip) {}
+  public record AddressRecord(String city, String street) {}
+
+  private static final int ROWS = 1000;
+
+  private Templates t;
+  private Map<String,Object> maps, pojos, records;
+
+  @Setup
+  public void setup() {
+    t = new Templates(Map.of("customers.html",
+        "@foreach(c in customers)<li>@var(c.name) — @var(c.address.street), @var(c.address.city)@if(c.vip) ★@endif</li>@endforeach"));
+    List<Object> m = new ArrayList<>(), p = new ArrayList<>(), r = new ArrayList<>();
+    for (int i=0;i<ROWS;i++) {
+      String name = "Cliente " + i, city = "Ciudad " + (i % 50), street = "Calle " + i;
+      boolean vip = i % 7 == 0;
+      m.add(Map.of("name", name, "address", Map.of("city", city, "street", street), "vip", vip));
+      p.add(new Customer(name, new Address(city, street), vip));
+      r.add(new CustomerRecord(name, new AddressRecord(city, street), vip));
+    }
+    maps = Map.of("customers", m);
+    pojos = Map.of("customers", p);
+    records = Map.of("customers", r);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception { t.close(); }
+
+  @Benchmark
+  public String map() throws Exception { return t.mopla.render("customers.html", maps); }
+
+  @Benchmark
+  public String pojo() throws Exception { return t.mopla.render("customers.html", pojos); }
+
+  @Benchmark
+  public String record() throws Exception { return t.mopla.render("customers.html", records); }
+}
@@ -0,0 +1,48 @@
+package com.ronaldbit.mopla.bench;
+
+import com.ronaldbit.mopla.MoplaContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda en cascada locales > req > session > app: variables que se resuelven en cada nivel,
+ * con prefijo explícito y sin él (el peor caso es la de app, que recorre toda la cascada).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScopeCascadeBenchmark {
+  private Templates t;
+  private MoplaContext ctx;
+  private Map<String,Object> vars;
+
+  @Setup
+  public void setup() {
+    StringBuilder tpl = new StringBuilder();
+    for (int i=0;i<50;i++) {
+      tpl.append("<p>@var(csrf) @var(usuario.nombre) @var(appName) @var(local").append(i % 10).append(")</p>")
+         .append("<p>@var(req.csrf) @var(session.usuario.nombre) @var(app.appName)</p>");
+    }
+    t = new Templates(Map.of("cascade.html", tpl.toString()));
+    ctx = new MoplaContext();
+    ctx.app().put("appName", "Mopla");
+    for (int i=0;i<20;i++) ctx.app().put("config" + i, i);
+    ctx.session().put("usuario", Map.of("nombre", "Ana"));
+    ctx.req().put("csrf", "abc123");
+    vars = new HashMap<>();
+    for (int i=0;i<10;i++) vars.put("local" + i, "valor " + i);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception { t.close(); }
+
+  @Benchmark
+  public String render() throws Exception {
+    return t.mopla.render("cascade.html", ctx, vars);
+  }
+}
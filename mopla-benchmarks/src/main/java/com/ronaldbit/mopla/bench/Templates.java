@@ -0,0 +1,39 @@
+package com.ronaldbit.mopla.bench;
+
+import com.ronaldbit.mopla.Mopla;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/** Plantillas de cada escenario en un directorio temporal, con un Mopla de producción encima. */
+final class Templates implements AutoCloseable {
+  final Path root;
+  final Mopla mopla;
+
+  Templates(Map<String,String> files) {
+    try {
+      root = Files.createTempDirectory("mopla-bench");
+      for (Map.Entry<String,String> e : files.entrySet()) {
+        Path p = root.resolve(e.getKey());
+        Files.createDirectories(p.getParent());
+        Files.writeString(p, e.getValue(), StandardCharsets.UTF_8);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    // producción: cache sin watcher, plantillas compiladas antes de medir
+    mopla = Mopla.builder().templatesRoot(root.toString()).devMode(false).cacheEnabled(true).warmUp(true).build();
+  }
+
+  @Override public void close() throws IOException {
+    mopla.close();
+    try (Stream<Path> s = Files.walk(root)) {
+      s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+    }
+  }
+}
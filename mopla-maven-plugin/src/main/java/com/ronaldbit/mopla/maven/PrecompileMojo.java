@@ -0,0 +1,52 @@
+package com.ronaldbit.mopla.maven;
+
+import com.ronaldbit.mopla.TemplatePrecompiler;
+import com.ronaldbit.mopla.TemplateSyntaxException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * mopla:precompile — deja junto a cada plantilla copiada a target/classes su forma ".mplc" (y el
+ * índice ".mplc-index"), que Mopla carga en producción sin leer ni parsear la plantilla. El build falla si alguna plantilla tiene errores de sintaxis.
+ */
+@Mojo(name = "precompile", defaultPhase = LifecyclePhase.PROCESS_RESOURCES, threadSafe = true)
+public class PrecompileMojo extends AbstractMojo {
+
+  @Parameter(defaultValue = "${project.basedir}/src/main/resources/templates", property = "mopla.templates")
+  private File templatesDirectory;
+
+  /** Donde quedan las plantillas empaquetadas (las ".mplc" van al lado). */
+  @Parameter(defaultValue = "${project.build.outputDirectory}/templates", property = "mopla.output")
+  private File outputDirectory;
+
+  @Parameter(defaultValue = "false", property = "mopla.skip")
+  private boolean skip;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (skip) { getLog().info("Mopla: precompilación omitida"); return; }
+    if (!templatesDirectory.isDirectory()) {
+      getLog().info("Mopla: no existe " + templatesDirectory + ", nada que precompilar");
+      return;
+    }
+    List<TemplateSyntaxException> errors;
+    try {
+      errors = TemplatePrecompiler.precompile(templatesDirectory.toPath(), outputDirectory.toPath());
+    } catch (IOException e) {
+      throw new MojoExecutionException("Mopla: error leyendo plantillas en " + templatesDirectory, e);
+    }
+    if (!errors.isEmpty()) {
+      for (TemplateSyntaxException e : errors) getLog().error(e.getMessage());
+      throw new MojoFailureException("Mopla: " + errors.size() + " plantilla(s) con errores de sintaxis");
+    }
+    getLog().info("Mopla: plantillas precompiladas en " + outputDirectory);
+  }
+}
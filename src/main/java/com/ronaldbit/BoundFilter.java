@@ -0,0 +1,7 @@
+package com.ronaldbit.mopla;
+
+/** Filtro con sus argumentos ya parseados y vinculados (ver {@link Filter#bind}). */
+@FunctionalInterface
+public interface BoundFilter {
+  String apply(Object value);
+}
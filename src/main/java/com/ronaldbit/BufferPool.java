@@ -0,0 +1,39 @@
+package com.ronaldbit.mopla;
+
+/**
+ * Buffers de salida reutilizados por hilo: un StringBuilder para renders a String y un byte[]
+ * para la salida UTF-8. Un render anidado (p. ej. desde un filtro) recibe uno nuevo.
+ */
+final class BufferPool {
+  private BufferPool() {}
+
+  // no retener buffers gigantes entre renders
+  static final int MAX_POOLED_CHARS = 1 << 20;
+  static final int BYTE_BUFFER = 8192;
+
+  private static final ThreadLocal<StringBuilder> CHARS = new ThreadLocal<>();
+  private static final ThreadLocal<byte[]> BYTES = new ThreadLocal<>();
+
+  /** StringBuilder vacío con al menos {@code hint} de capacidad. */
+  static StringBuilder chars(int hint) {
+    StringBuilder sb = CHARS.get();
+    if (sb == null) return new StringBuilder(Math.max(256, hint));
+    CHARS.set(null); // en uso
+    sb.setLength(0);
+    sb.ensureCapacity(hint);
+    return sb;
+  }
+
+  static void release(StringBuilder sb) {
+    if (sb.capacity() <= MAX_POOLED_CHARS) CHARS.set(sb);
+  }
+
+  static byte[] bytes() {
+    byte[] b = BYTES.get();
+    if (b == null) return new byte[BYTE_BUFFER];
+    BYTES.set(null);
+    return b;
+  }
+
+  static void release(byte[] b) { BYTES.set(b); }
+}
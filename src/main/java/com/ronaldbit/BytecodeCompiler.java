@@ -0,0 +1,546 @@
+package com.ronaldbit.mopla;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * Tier opcional: convierte cada secuencia de nodos de una plantilla caliente en una clase oculta
+ * ({@code Lookup.defineHiddenClass}) cuyo {@code render} es la plantilla hecha código:
+ * <ul>
+ *   <li>literales como constantes del pool (junto a su UTF-8 pre-codificado);</li>
+ *   <li>@if/@unless/@else como saltos, @section y @with en línea;</li>
+ *   <li>@foreach como un bucle real sobre el iterador, con el frame del bucle, el índice y el
+ *       recurso a cerrar en variables locales (try/finally generado);</li>
+ *   <li>cada lectura de variable (@var, @raw, condiciones, listas) con su propio {@link VarSite},
+ *       que liga el accesor de cada propiedad de bean a la clase vista en ese sitio.</li>
+ * </ul>
+ * El resto (@include, @cache, @set, @asset, @dump, @flush, slots de layout) llama al render de su
+ * nodo; el cuerpo de un @cache se compila aparte. Si el método en línea no entra en el límite de
+ * la JVM se genera uno por bloque. Solo JDK; ante cualquier fallo se sigue con el intérprete.
+ */
+final class BytecodeCompiler {
+  private BytecodeCompiler() {}
+
+  private static final String NODE     = "com/ronaldbit/mopla/Node";
+  private static final String SEQ      = "com/ronaldbit/mopla/CompiledSeq";
+  private static final String OUTPUT   = "com/ronaldbit/mopla/RenderOutput";
+  private static final String STATE    = "com/ronaldbit/mopla/RenderState";
+  private static final String SCOPE    = "com/ronaldbit/mopla/Scope";
+  private static final String SITE     = "com/ronaldbit/mopla/VarSite";
+  private static final String CHAIN    = "com/ronaldbit/mopla/FilterChain";
+  private static final String UTILS    = "com/ronaldbit/mopla/TemplateUtils";
+  private static final String VAR      = "com/ronaldbit/mopla/Nodes$Var";
+  private static final String RAW      = "com/ronaldbit/mopla/Nodes$Raw";
+  private static final String FOREACH  = "com/ronaldbit/mopla/Nodes$Foreach";
+  private static final String OBJECT   = "java/lang/Object";
+  private static final String RENDER_DESC = "(L" + STATE + ";L" + SCOPE + ";L" + OUTPUT + ";)V";
+  private static final String INIT_DESC = "([L" + NODE + ";[[B[L" + SITE + ";[L" + CHAIN + ";[Ljava/util/Map;)V";
+  // saltos con offset de 16 bits y margen bajo el límite de 64KB por método
+  private static final int MAX_CODE    = 30_000;
+  private static final int MAX_LITERAL = 65535;
+
+  /**
+   * Versión con bytecode de la plantilla; devuelve la misma si no se puede generar. Con @extend se
+   * dejan las secciones interpretadas: las compila {@link CompiledTemplate.LayoutPlan} después de
+   * analizarlas (p. ej. buscar @flush, que dentro de una clase generada ya no se ve).
+   */
+  static CompiledTemplate compile(CompiledTemplate t) {
+    try {
+      Node[] nodes = t.extendsFile == null ? compileSeq(t.nodes) : t.nodes;
+      return new CompiledTemplate(t.name, nodes, t.extendsFile, t.sections);
+    } catch (Throwable e) {
+      return t;
+    }
+  }
+
+  /** Como {@link #compileSeq} pero ante cualquier fallo devuelve la secuencia interpretada. */
+  static Node[] compileOrKeep(Node[] seq) {
+    try {
+      return compileSeq(seq);
+    } catch (Throwable e) {
+      return seq;
+    }
+  }
+
+  /** Secuencia -> {nodo generado}; la misma si es demasiado grande incluso sin bloques en línea. */
+  static Node[] compileSeq(Node[] seq) throws Exception {
+    if (seq.length == 0) return seq;
+    Generator g = Generator.generate(seq, true);
+    if (g == null) g = Generator.generate(seq, false);
+    if (g == null) return seq;
+    MethodHandles.Lookup hidden = MethodHandles.lookup().defineHiddenClass(g.classFile, true);
+    try {
+      MethodType init = MethodType.methodType(void.class, Node[].class, byte[][].class, VarSite[].class, FilterChain[].class, Map[].class);
+      Node seqNode = (Node) hidden.findConstructor(hidden.lookupClass(), init)
+          .invoke(g.nodes.toArray(new Node[0]), g.literals.toArray(new byte[0][]), g.sites.toArray(new VarSite[0]),
+                  g.chains.toArray(new FilterChain[0]), g.maps.toArray(new Map<?,?>[0]));
+      return new Node[] { seqNode };
+    } catch (Exception | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /* ========== Generación ========== */
+
+  private static final class Generator {
+    final boolean inline;
+    final ConstantPool cp = new ConstantPool();
+    final Code code = new Code();
+    // constantes de la instancia: índice en cada array = orden de aparición en el código
+    final List<Node> nodes = new ArrayList<>();
+    final List<byte[]> literals = new ArrayList<>();
+    final List<VarSite> sites = new ArrayList<>();
+    final List<FilterChain> chains = new ArrayList<>();
+    final List<Map<String,Object>> maps = new ArrayList<>();
+    byte[] classFile;
+
+    // pool
+    final int thisClass, scopeClass, iteratorClass, closeableClass, throwableClass;
+    final int nField, bField, vField, fField, mField;
+    final int nodeRender, append, siteGet, varWrite, rawWrite, truthy, iterator, owned;
+    final int child, childWith, clear, set, hasNext, next, close, boxInt;
+
+    private Generator(boolean inline) throws IOException {
+      this.inline = inline;
+      thisClass      = cp.classRef(SEQ);
+      scopeClass     = cp.classRef(SCOPE);
+      iteratorClass  = cp.classRef("java/util/Iterator");
+      closeableClass = cp.classRef("java/lang/AutoCloseable");
+      throwableClass = cp.classRef("java/lang/Throwable");
+      nField     = cp.memberRef(9, SEQ, "n", "[L" + NODE + ";");
+      bField     = cp.memberRef(9, SEQ, "b", "[[B");
+      vField     = cp.memberRef(9, SEQ, "v", "[L" + SITE + ";");
+      fField     = cp.memberRef(9, SEQ, "f", "[L" + CHAIN + ";");
+      mField     = cp.memberRef(9, SEQ, "m", "[Ljava/util/Map;");
+      nodeRender = cp.memberRef(11, NODE, "render", RENDER_DESC);
+      append     = cp.memberRef(10, OUTPUT, "appendLiteral", "(Ljava/lang/String;[B)V");
+      siteGet    = cp.memberRef(10, SITE, "get", "(L" + SCOPE + ";)L" + OBJECT + ";");
+      varWrite   = cp.memberRef(10, VAR, "write", "(L" + STATE + ";L" + OUTPUT + ";L" + OBJECT + ";L" + CHAIN + ";)V");
+      rawWrite   = cp.memberRef(10, RAW, "write", "(L" + OUTPUT + ";L" + OBJECT + ";)V");
+      truthy     = cp.memberRef(10, UTILS, "truthy", "(L" + OBJECT + ";)Z");
+      iterator   = cp.memberRef(10, UTILS, "iterator", "(L" + OBJECT + ";)Ljava/util/Iterator;");
+      owned      = cp.memberRef(10, FOREACH, "owned", "(L" + OBJECT + ";)Ljava/lang/AutoCloseable;");
+      child      = cp.memberRef(10, SCOPE, "child", "()L" + SCOPE + ";");
+      childWith  = cp.memberRef(10, SCOPE, "child", "(Ljava/util/Map;)L" + SCOPE + ";");
+      clear      = cp.memberRef(10, SCOPE, "clear", "()V");
+      set        = cp.memberRef(10, SCOPE, "set", "(Ljava/lang/String;L" + OBJECT + ";)V");
+      hasNext    = cp.memberRef(11, "java/util/Iterator", "hasNext", "()Z");
+      next       = cp.memberRef(11, "java/util/Iterator", "next", "()L" + OBJECT + ";");
+      close      = cp.memberRef(11, "java/lang/AutoCloseable", "close", "()V");
+      boxInt     = cp.memberRef(10, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
+    }
+
+    /** Clase generada para {@code seq}; null si el método queda demasiado grande. */
+    static Generator generate(Node[] seq, boolean inline) throws Exception {
+      Generator g = new Generator(inline);
+      Code c = g.code;
+      c.local(g.thisClass);
+      c.local(g.cp.classRef(STATE));
+      c.local(g.scopeClass);
+      c.local(g.cp.classRef(OUTPUT));
+      g.body(seq, 2);
+      c.u1(0xb1);                                                         // return
+      if (c.len > MAX_CODE) return null;
+      g.classFile = g.classFile();
+      return g;
+    }
+
+    private void body(Node[] seq, int vars) throws Exception {
+      for (Node n : seq) node(n, vars);
+    }
+
+    private void node(Node n, int vars) throws Exception {
+      if (n instanceof Nodes.Text txt && utf8Length(txt.text) <= MAX_LITERAL) {
+        code.u1(0x2d);                                                    // aload_3 (out)
+        code.u1(0x13); code.u2(cp.string(txt.text));                      // ldc_w "literal"
+        element(bField, add(literals, txt.utf8));                         // utf8 pre-codificado
+        code.u1(0xb6); code.u2(append);                                   // invokevirtual appendLiteral
+      } else if (n instanceof Nodes.Var x) {
+        code.u1(0x2b); code.u1(0x2d);                                     // aload_1 (st); aload_3 (out)
+        read(x.path, vars);
+        if (x.filters == null) code.u1(0x01);                             // aconst_null
+        else element(fField, add(chains, x.filters));
+        code.u1(0xb8); code.u2(varWrite);                                 // invokestatic Nodes.Var.write
+      } else if (n instanceof Nodes.Raw x) {
+        code.u1(0x2d);
+        read(x.path, vars);
+        code.u1(0xb8); code.u2(rawWrite);
+      } else if (inline && n instanceof Nodes.If x) {
+        ifElse(x, vars);
+      } else if (inline && n instanceof Nodes.Foreach x) {
+        foreach(x, vars);
+      } else if (inline && n instanceof Nodes.With x) {
+        int mark = code.mark();
+        code.load(vars);
+        element(mField, add(maps, x.locals));
+        code.u1(0xb6); code.u2(childWith);                                // vars.child(locals)
+        int scope = code.local(scopeClass);
+        code.store(scope);
+        body(x.body, scope);
+        code.release(mark);
+      } else if (inline && n instanceof Nodes.Section x) {
+        body(x.body, vars);
+      } else {
+        // nodo del intérprete; sus bloques internos (p. ej. @cache) se compilan aparte
+        element(nField, add(nodes, n.withBodies(BytecodeCompiler::compileOrKeep)));
+        code.u1(0x2b); code.load(vars); code.u1(0x2d);                    // st, vars, out
+        code.u1(0xb9); code.u2(nodeRender); code.u1(4); code.u1(0);       // invokeinterface render
+      }
+    }
+
+    // deja en la pila el valor de la variable (VarSite.get(vars))
+    private void read(VarPath path, int vars) throws IOException {
+      element(vField, add(sites, new VarSite(path)));
+      code.load(vars);
+      code.u1(0xb6); code.u2(siteGet);
+    }
+
+    private void ifElse(Nodes.If x, int vars) throws Exception {
+      read(x.cond, vars);
+      code.u1(0xb8); code.u2(truthy);
+      Label otherwise = new Label(), end = new Label();
+      code.jump(x.negate ? 0x9a : 0x99, otherwise);                       // ifne / ifeq
+      body(x.thenB, vars);
+      if (x.elseB == null) { code.bind(otherwise); return; }
+      code.jump(0xa7, end);                                               // goto
+      code.bind(otherwise);
+      body(x.elseB, vars);
+      code.bind(end);
+    }
+
+    /*
+     *   list = site.get(vars); it = iterator(list); if (it == null) goto end;
+     *   owned = Foreach.owned(list);
+     *   try { loop = vars.child(); i = 0;
+     *         while (it.hasNext()) { loop.clear(); loop.set(item, it.next()); loop.set(item_index, i++); body(loop) }
+     *   } finally { if (owned != null) owned.close(); }
+     *   end:
+     */
+    private void foreach(Nodes.Foreach x, int vars) throws Exception {
+      int mark = code.mark();
+      Label end = new Label(), head = new Label(), exit = new Label(), handler = new Label(), rethrow = new Label();
+      read(x.list, vars);
+      code.u1(0x59);                                                      // dup
+      int list = code.local(cp.classRef(OBJECT));
+      code.store(list);
+      code.u1(0xb8); code.u2(iterator);
+      int it = code.local(iteratorClass);
+      code.store(it);
+      code.load(it);
+      code.jump(0xc6, end);                                               // ifnull
+      code.load(list);
+      code.u1(0xb8); code.u2(owned);
+      int res = code.local(closeableClass);
+      code.store(res);
+      int tryMark = code.mark();
+
+      int tryStart = code.len;
+      code.load(vars);
+      code.u1(0xb6); code.u2(child);
+      int loop = code.local(scopeClass);
+      code.store(loop);
+      code.u1(0x03);                                                      // iconst_0
+      int index = code.local(Code.INT);
+      code.u1(0x36); code.u1(index);                                      // istore
+      code.bind(head);
+      code.load(it);
+      code.u1(0xb9); code.u2(hasNext); code.u1(1); code.u1(0);
+      code.jump(0x99, exit);                                              // ifeq
+      code.load(loop);
+      code.u1(0xb6); code.u2(clear);
+      code.load(loop);
+      code.u1(0x13); code.u2(cp.string(x.itemName));
+      code.load(it);
+      code.u1(0xb9); code.u2(next); code.u1(1); code.u1(0);
+      code.u1(0xb6); code.u2(set);
+      code.load(loop);
+      code.u1(0x13); code.u2(cp.string(x.indexName));
+      code.u1(0x15); code.u1(index);                                      // iload
+      code.u1(0x84); code.u1(index); code.u1(1);                          // iinc
+      code.u1(0xb8); code.u2(boxInt);
+      code.u1(0xb6); code.u2(set);
+      body(x.body, loop);
+      code.jump(0xa7, head);
+      code.bind(exit);
+      int tryEnd = code.len;
+
+      code.release(tryMark);
+      code.load(res);
+      code.jump(0xc6, end);
+      code.load(res);
+      code.u1(0xb9); code.u2(close); code.u1(1); code.u1(0);
+      code.jump(0xa7, end);
+
+      code.bindHandler(handler, throwableClass);
+      code.handlers.add(new int[] { tryStart, tryEnd, handler.pos });
+      int ex = code.local(throwableClass);
+      code.store(ex);
+      code.load(res);
+      code.jump(0xc6, rethrow);
+      code.load(res);
+      code.u1(0xb9); code.u2(close); code.u1(1); code.u1(0);
+      code.bind(rethrow);
+      code.load(ex);
+      code.u1(0xbf);                                                      // athrow
+
+      code.release(mark);
+      code.bind(end);
+    }
+
+    // this.<field>[index]
+    private void element(int field, int index) throws IOException {
+      if (index > Short.MAX_VALUE) throw new IOException("Demasiadas constantes");
+      code.u1(0x2a); code.u1(0xb4); code.u2(field);                      // aload_0; getfield
+      if (index <= 5)        code.u1(0x03 + index);                       // iconst_<i>
+      else if (index <= 127) { code.u1(0x10); code.u1(index); }           // bipush
+      else                   { code.u1(0x11); code.u2(index); }           // sipush
+      code.u1(0x32);                                                      // aaload
+    }
+
+    private static <T> int add(List<T> list, T value) {
+      list.add(value);
+      return list.size() - 1;
+    }
+
+    private byte[] classFile() throws IOException {
+      int superClass = cp.classRef(OBJECT);
+      int nodeIface  = cp.classRef(NODE);
+      int objInit    = cp.memberRef(10, OBJECT, "<init>", "()V");
+      int initName   = cp.utf8("<init>"), initDesc = cp.utf8(INIT_DESC);
+      int renderName = cp.utf8("render"), renderDesc = cp.utf8(RENDER_DESC);
+      int codeAttr   = cp.utf8("Code");
+      int stackMap   = cp.utf8("StackMapTable");
+      int[][] fields = {
+          { cp.utf8("n"), cp.utf8("[L" + NODE + ";"), nField },
+          { cp.utf8("b"), cp.utf8("[[B"), bField },
+          { cp.utf8("v"), cp.utf8("[L" + SITE + ";"), vField },
+          { cp.utf8("f"), cp.utf8("[L" + CHAIN + ";"), fField },
+          { cp.utf8("m"), cp.utf8("[Ljava/util/Map;"), mField },
+      };
+      byte[] frames = code.stackMapTable();
+
+      // <init>(n, b, v, f, m) { super(); this.n = n; ... }
+      ByteArrayOutputStream init = new ByteArrayOutputStream();
+      DataOutputStream ic = new DataOutputStream(init);
+      ic.writeByte(0x2a); ic.writeByte(0xb7); ic.writeShort(objInit);    // aload_0; invokespecial
+      for (int i=0;i<fields.length;i++) {
+        ic.writeByte(0x2a); ic.writeByte(0x19); ic.writeByte(i + 1);     // aload_0; aload i+1
+        ic.writeByte(0xb5); ic.writeShort(fields[i][2]);                 // putfield
+      }
+      ic.writeByte(0xb1);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bos);
+      out.writeInt(0xCAFEBABE);
+      out.writeShort(0); out.writeShort(61);                             // Java 17
+      cp.write(out);
+      out.writeShort(0x0010 | 0x0020);                                   // ACC_FINAL | ACC_SUPER
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(1); out.writeShort(nodeIface);
+      out.writeShort(fields.length);
+      for (int[] f : fields) {
+        out.writeShort(0x0002 | 0x0010); out.writeShort(f[0]); out.writeShort(f[1]); out.writeShort(0);
+      }
+      out.writeShort(2);                                                 // methods
+      writeMethod(out, initName, initDesc, codeAttr, 2, fields.length + 1, init.toByteArray(), List.of(), 0, null);
+      writeMethod(out, renderName, renderDesc, codeAttr, 6, code.maxLocals, code.bytes(), code.handlers, stackMap, frames);
+      out.writeShort(0);                                                 // atributos de clase
+      return bos.toByteArray();
+    }
+  }
+
+  private static void writeMethod(DataOutputStream out, int name, int desc, int codeAttr, int maxStack, int maxLocals,
+                                  byte[] code, List<int[]> handlers, int stackMapName, byte[] stackMap) throws IOException {
+    int attrs = stackMap == null ? 0 : 6 + stackMap.length;
+    out.writeShort(0x0001); out.writeShort(name); out.writeShort(desc);
+    out.writeShort(1);
+    out.writeShort(codeAttr);
+    out.writeInt(12 + code.length + 8 * handlers.size() + attrs);
+    out.writeShort(maxStack); out.writeShort(maxLocals);
+    out.writeInt(code.length); out.write(code);
+    out.writeShort(handlers.size());                                     // tabla de excepciones
+    for (int[] h : handlers) {
+      out.writeShort(h[0]); out.writeShort(h[1]); out.writeShort(h[2]); out.writeShort(0); // catch any
+    }
+    if (stackMap == null) { out.writeShort(0); return; }
+    out.writeShort(1);
+    out.writeShort(stackMapName);
+    out.writeInt(stackMap.length);
+    out.write(stackMap);
+  }
+
+  /** Longitud en "modified UTF-8" (la del constant pool). */
+  private static int utf8Length(String s) {
+    int n = 0;
+    for (int i=0;i<s.length();i++) {
+      char c = s.charAt(i);
+      n += (c != 0 && c < 0x80) ? 1 : (c < 0x800 ? 2 : 3);
+      if (n > MAX_LITERAL) return n;
+    }
+    return n;
+  }
+
+  /** Destino de un salto; se resuelve al ubicarla ({@link Code#bind}). */
+  private static final class Label {
+    int pos = -1;
+    final List<Integer> fixups = new ArrayList<>(2);
+  }
+
+  /**
+   * Bytecode de un método con saltos a etiquetas. Las variables locales se asignan como pila (cada
+   * bloque libera las suyas al terminar) y cada etiqueta guarda los tipos vivos en ese punto: de ahí
+   * sale la StackMapTable que pide el verificador de clases 50+.
+   */
+  private static final class Code {
+    static final int INT = -1;
+
+    private byte[] buf = new byte[512];
+    int len;
+    int maxLocals;
+    // tipo de cada slot vivo: índice de la clase en el pool, o INT
+    private final List<Integer> locals = new ArrayList<>();
+    // offset → frame; a igual offset queda la última etiqueta (con menos locales vivas)
+    private final TreeMap<Integer, int[][]> frames = new TreeMap<>();
+    final List<int[]> handlers = new ArrayList<>();
+
+    void u1(int v) {
+      if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+      buf[len++] = (byte) v;
+    }
+
+    void u2(int v) { u1(v >>> 8); u1(v); }
+
+    byte[] bytes() { return Arrays.copyOf(buf, len); }
+
+    int local(int type) {
+      if (locals.size() > 255) throw new IllegalStateException("Demasiadas variables locales");
+      locals.add(type);
+      maxLocals = Math.max(maxLocals, locals.size());
+      return locals.size() - 1;
+    }
+
+    int mark() { return locals.size(); }
+
+    void release(int mark) {
+      while (locals.size() > mark) locals.remove(locals.size() - 1);
+    }
+
+    void load(int slot) {
+      if (slot <= 3) u1(0x2a + slot);                                     // aload_<n>
+      else { u1(0x19); u1(slot); }                                        // aload
+    }
+
+    void store(int slot) { u1(0x3a); u1(slot); }                          // astore
+
+    void jump(int opcode, Label l) {
+      int at = len;
+      u1(opcode);
+      if (l.pos >= 0) u2(l.pos - at);
+      else { l.fixups.add(at); u2(0); }
+    }
+
+    void bind(Label l) { bindAt(l, null); }
+
+    /** Manejador de excepciones: mismas locales, con el Throwable en la pila. */
+    void bindHandler(Label l, int throwable) { bindAt(l, new int[] { throwable }); }
+
+    private void bindAt(Label l, int[] stack) {
+      l.pos = len;
+      for (int at : l.fixups) {
+        int off = len - at;
+        buf[at + 1] = (byte) (off >>> 8);
+        buf[at + 2] = (byte) off;
+      }
+      int[] live = new int[locals.size()];
+      for (int i=0;i<live.length;i++) live[i] = locals.get(i);
+      frames.put(len, new int[][] { live, stack == null ? new int[0] : stack });
+    }
+
+    /** Cuerpo del atributo StackMapTable: un full_frame por destino de salto. */
+    byte[] stackMapTable() throws IOException {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream d = new DataOutputStream(bos);
+      d.writeShort(frames.size());
+      int prev = -1;
+      for (Map.Entry<Integer, int[][]> e : frames.entrySet()) {
+        d.writeByte(255);
+        d.writeShort(e.getKey() - prev - 1);
+        prev = e.getKey();
+        for (int[] types : e.getValue()) {
+          d.writeShort(types.length);
+          for (int t : types) {
+            if (t == INT) d.writeByte(1);
+            else { d.writeByte(7); d.writeShort(t); }
+          }
+        }
+      }
+      return bos.toByteArray();
+    }
+  }
+
+  /** Constant pool mínimo con deduplicación. */
+  private static final class ConstantPool {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream data = new DataOutputStream(bytes);
+    private final Map<String,Integer> index = new HashMap<>();
+    private int next = 1;
+
+    int utf8(String s) throws IOException {
+      Integer i = index.get("U" + s);
+      if (i != null) return i;
+      data.writeByte(1); data.writeUTF(s);
+      return register("U" + s);
+    }
+
+    int classRef(String internalName) throws IOException {
+      int name = utf8(internalName);
+      Integer i = index.get("C" + internalName);
+      if (i != null) return i;
+      data.writeByte(7); data.writeShort(name);
+      return register("C" + internalName);
+    }
+
+    int string(String s) throws IOException {
+      int u = utf8(s);
+      Integer i = index.get("S" + s);
+      if (i != null) return i;
+      data.writeByte(8); data.writeShort(u);
+      return register("S" + s);
+    }
+
+    /** tag 9 = Fieldref, 10 = Methodref, 11 = InterfaceMethodref */
+    int memberRef(int tag, String owner, String name, String desc) throws IOException {
+      String key = "M" + tag + owner + "." + name + desc;
+      Integer i = index.get(key);
+      if (i != null) return i;
+      int cls = classRef(owner);
+      int n = utf8(name), d = utf8(desc);
+      Integer nt = index.get("N" + name + desc);
+      if (nt == null) {
+        data.writeByte(12); data.writeShort(n); data.writeShort(d);
+        nt = register("N" + name + desc);
+      }
+      data.writeByte(tag); data.writeShort(cls); data.writeShort(nt);
+      return register(key);
+    }
+
+    private int register(String key) {
+      int i = next++;
+      index.put(key, i);
+      return i;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      if (next > 0xFFFF) throw new IOException("Constant pool demasiado grande");
+      out.writeShort(next);
+      out.write(bytes.toByteArray());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.ronaldbit.mopla;
+
+/** Foto de los contadores del cache de plantillas ({@link Mopla#cacheStats()}). */
+public final class CacheStats {
+  private final long hits, misses, loads, loadNanos, evictions;
+  private final int size;
+  private final long weight, maxWeight;
+  private final int maxEntries;
+
+  CacheStats(long hits, long misses, long loads, long loadNanos, long evictions,
+             int size, long weight, long maxWeight, int maxEntries) {
+    this.hits = hits; this.misses = misses; this.loads = loads; this.loadNanos = loadNanos;
+    this.evictions = evictions; this.size = size; this.weight = weight;
+    this.maxWeight = maxWeight; this.maxEntries = maxEntries;
+  }
+
+  public long hits()          { return hits; }
+  public long misses()        { return misses; }
+  /** Lecturas + compilaciones hechas (una por miss). */
+  public long loads()         { return loads; }
+  /** Tiempo total de lectura + compilación, en nanosegundos. */
+  public long loadNanos()     { return loadNanos; }
+  public long evictions()     { return evictions; }
+  /** Plantillas cacheadas ahora mismo. */
+  public int size()           { return size; }
+  /** Peso estimado (bytes) de lo cacheado. */
+  public long weight()        { return weight; }
+  /** Límites configurados (0 = sin límite). */
+  public long maxWeight()     { return maxWeight; }
+  public int maxEntries()     { return maxEntries; }
+
+  public double hitRate() {
+    long total = hits + misses;
+    return total == 0 ? 1.0 : (double) hits / total;
+  }
+
+  public double averageLoadMillis() {
+    return loads == 0 ? 0.0 : loadNanos / 1e6 / loads;
+  }
+
+  @Override public String toString() {
+    return "CacheStats{hits=" + hits + ", misses=" + misses + ", loads=" + loads
+        + ", loadMs=" + String.format(java.util.Locale.ROOT, "%.2f", loadNanos / 1e6)
+        + ", evictions=" + evictions + ", size=" + size + ", weight=" + weight + "}";
+  }
+}
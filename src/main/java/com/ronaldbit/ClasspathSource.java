@@ -0,0 +1,126 @@
+package com.ronaldbit.mopla;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Plantillas servidas desde el classpath (p. ej. dentro del fat-jar). Se les asigna una ruta
+ * virtual bajo {@link #ROOT} para que pasen por el mismo cache, resolución de includes/layouts y
+ * chequeo de seguridad que las de disco. El contenido de un jar no cambia en caliente, así que se
+ * indexa una sola vez: un include a algo que no está en el índice se descarta sin tocar el jar.
+ */
+final class ClasspathSource implements TemplateSource {
+  static final String PREFIX = "classpath:";
+  /** Raíz virtual (nunca se toca el disco con estas rutas). */
+  static final Path ROOT = Paths.get(java.io.File.separator, "classpath");
+
+  private final ClassLoader loader;
+  private final Path root;
+  private final String prefix;       // "templates/" o "" (todo el classpath)
+  // nombre → tamaño en bytes; null: no se pudo listar, se pregunta al ClassLoader
+  private final Map<String, Long> index;
+
+  ClasspathSource(ClassLoader loader, Path root, String resourceDir, boolean indexed) {
+    this.loader = loader;
+    this.root = root;
+    this.prefix = resourceDir.isEmpty() || resourceDir.endsWith("/") ? resourceDir : resourceDir + "/";
+    this.index = indexed ? index(loader, this.prefix) : null;
+  }
+
+  static ClassLoader defaultLoader() {
+    ClassLoader cl = Thread.currentThread().getContextClassLoader();
+    return cl != null ? cl : ClasspathSource.class.getClassLoader();
+  }
+
+  /** "classpath:templates" → nombre de recurso sin barras al inicio/fin. */
+  static String resourceName(String location) {
+    String res = location.substring(PREFIX.length());
+    while (res.startsWith("/")) res = res.substring(1);
+    while (res.endsWith("/")) res = res.substring(0, res.length() - 1);
+    return res;
+  }
+
+  /** Directorio real si el recurso está expandido en disco (IDE, tests); null si vive en un jar. */
+  static Path directory(ClassLoader loader, String res) {
+    URL url = loader.getResource(res);
+    if (url == null || !"file".equals(url.getProtocol())) return null;
+    try {
+      Path p = Paths.get(url.toURI());
+      return Files.isDirectory(p) ? p : null;
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  @Override public String read(Path p) throws IOException {
+    byte[] b = readBytes(p);
+    return b == null ? null : new String(b, StandardCharsets.UTF_8);
+  }
+
+  @Override public byte[] readBytes(Path p) throws IOException {
+    String name = root.relativize(p).toString().replace('\\', '/');
+    if (index != null && !index.containsKey(name)) return null;
+    InputStream in = loader.getResourceAsStream(prefix + name);
+    if (in == null) return null;
+    try (in) { return in.readAllBytes(); }
+  }
+
+  @Override public long size(Path p) {
+    if (index == null) return -1;
+    Long size = index.get(root.relativize(p).toString().replace('\\', '/'));
+    return size == null ? -1 : size;
+  }
+
+  @Override public List<Path> list(Path root) {
+    if (index == null) return List.of();
+    List<Path> out = new ArrayList<>();
+    for (String name : new TreeSet<>(index.keySet())) {
+      String file = name.substring(name.lastIndexOf('/') + 1);
+      if (TemplateSource.isTemplateName(file)) out.add(root.resolve(name).normalize());
+    }
+    return out;
+  }
+
+  /** Todos los archivos bajo {@code prefix} en cada entrada del classpath; null si alguna no se puede listar. */
+  private static Map<String, Long> index(ClassLoader loader, String prefix) {
+    if (prefix.isEmpty()) return null;
+    Map<String, Long> names = new HashMap<>();
+    try {
+      Enumeration<URL> urls = loader.getResources(prefix.substring(0, prefix.length() - 1));
+      while (urls.hasMoreElements()) {
+        URL url = urls.nextElement();
+        if ("file".equals(url.getProtocol())) {
+          Path dir = Paths.get(url.toURI());
+          try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).forEach(f -> names.put(dir.relativize(f).toString().replace('\\', '/'), f.toFile().length()));
+          }
+          continue;
+        }
+        URLConnection conn = url.openConnection();
+        if (!(conn instanceof JarURLConnection jc)) return null;
+        String base = jc.getEntryName() == null ? "" : jc.getEntryName();
+        if (!base.isEmpty() && !base.endsWith("/")) base += "/";
+        jc.setUseCaches(false);
+        try (JarFile jar = jc.getJarFile()) {
+          for (Enumeration<JarEntry> en = jar.entries(); en.hasMoreElements(); ) {
+            JarEntry e = en.nextElement();
+            if (!e.isDirectory() && e.getName().startsWith(base)) names.put(e.getName().substring(base.length()), e.getSize());
+          }
+        }
+      }
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      return null;
+    }
+    return names;
+  }
+}
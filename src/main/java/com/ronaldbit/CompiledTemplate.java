@@ -0,0 +1,336 @@
+package com.ronaldbit.mopla;
+
+import java.util.*;
+
+/**
+ * Plantilla compilada: árbol inmutable de nodos que se recorre en cada render
+ * (sin regex ni copias intermedias del texto).
+ */
+final class CompiledTemplate {
+  final String name;
+  final Node[] nodes;
+  // @extend("layout") (null si no hereda) y secciones definidas en esta plantilla
+  final String extendsFile;
+  final Map<String, Node[]> sections;
+
+  CompiledTemplate(String name, Node[] nodes, String extendsFile, Map<String, Node[]> sections) {
+    this.name = name;
+    this.nodes = nodes;
+    this.extendsFile = extendsFile;
+    this.sections = Collections.unmodifiableMap(sections);
+  }
+
+  /** Archivos que usa: el layout de @extend y cada @include (también dentro de bloques y secciones). */
+  Set<String> dependencies() {
+    Set<String> out = new LinkedHashSet<>();
+    if (extendsFile != null) out.add(extendsFile);
+    collect(nodes, out);
+    for (Node[] body : sections.values()) collect(body, out);
+    return out;
+  }
+
+  private static void collect(Node[] body, Set<String> out) {
+    for (Node n : body) {
+      if (n instanceof Nodes.Include inc) out.add(inc.file);
+      try {
+        n.withBodies(inner -> { collect(inner, out); return inner; });
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /** Tiene algún @cache: su salida puede ser la de un render anterior (no sale solo del modelo). */
+  boolean hasFragmentCache() {
+    if (hasFragmentCache(nodes)) return true;
+    for (Node[] body : sections.values()) if (hasFragmentCache(body)) return true;
+    return false;
+  }
+
+  private static boolean hasFragmentCache(Node[] body) {
+    boolean[] found = { false };
+    for (Node n : body) {
+      if (n instanceof Nodes.Cache) return true;
+      try {
+        n.withBodies(inner -> { found[0] |= hasFragmentCache(inner); return inner; });
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+      if (found[0]) return true;
+    }
+    return false;
+  }
+
+  /** Rutas de cada @asset (su URL sale del assetHook, no del modelo). */
+  Set<String> assets() {
+    Set<String> out = new LinkedHashSet<>();
+    collectAssets(nodes, out);
+    for (Node[] body : sections.values()) collectAssets(body, out);
+    return out;
+  }
+
+  private static void collectAssets(Node[] body, Set<String> out) {
+    for (Node n : body) {
+      if (n instanceof Nodes.Asset a) out.add(a.path);
+      try {
+        n.withBodies(inner -> { collectAssets(inner, out); return inner; });
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /** Variables que lee la plantilla (@var, @raw, condiciones, listas, keys de @cache...), para el prefetch. */
+  Set<VarPath> variables() {
+    Set<VarPath> out = new LinkedHashSet<>();
+    collectVars(nodes, out);
+    for (Node[] body : sections.values()) collectVars(body, out);
+    return out;
+  }
+
+  private static void collectVars(Node[] body, Set<VarPath> out) {
+    for (Node n : body) {
+      if (n instanceof Nodes.Var x) out.add(x.path);
+      else if (n instanceof Nodes.Raw x) out.add(x.path);
+      else if (n instanceof Nodes.Yield x) out.add(x.path);
+      else if (n instanceof Nodes.If x) out.add(x.cond);
+      else if (n instanceof Nodes.Foreach x) out.add(x.list);
+      else if (n instanceof Nodes.Dump x) out.add(x.path);
+      else if (n instanceof Nodes.Cache x) out.addAll(Arrays.asList(x.keyVars));
+      try {
+        n.withBodies(inner -> { collectVars(inner, out); return inner; });
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  // variables de la plantilla y su cadena @extend (prefetch); se calcula una vez
+  volatile Collection<VarPath> prefetchRefs;
+
+  // hash del texto fuente (lo asigna TemplateProcessor al compilar); versión de la plantilla para el ETag
+  long version;
+  // plantillas y variables de las que depende la salida (ETag); fuera de devMode se calcula una vez
+  volatile ETags.Plan etagPlan;
+
+  // tamaño de salida aprendido (máximo con decaimiento) para dimensionar el buffer del próximo render
+  private volatile int sizeHint = 256;
+
+  int sizeHint() { return sizeHint; }
+
+  void recordSize(int chars) {
+    int h = sizeHint;
+    int next = Math.max(chars, h - (h >> 4));
+    if (next != h) sizeHint = next;
+  }
+
+  // tier 2 (bytecode generado); apunta a sí misma cuando ya no hay nada que compilar
+  private volatile CompiledTemplate jitted;
+  private int renders; // conteo aproximado (sin sincronizar) hasta alcanzar el umbral
+  // guardada en el TemplateCache: solo esas pasan al tier 2 (un renderString o una plantilla sin cache
+  // es una instancia nueva en cada render y definiría una clase oculta por llamada)
+  boolean cached;
+
+  void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+    tier(st.processor.jitThreshold()).renderTree(st, vars, out);
+  }
+
+  private CompiledTemplate tier(int threshold) {
+    CompiledTemplate j = jitted;
+    if (j != null) return j;
+    if (threshold <= 0 || !cached || ++renders < threshold) return this;
+    synchronized (this) {
+      if (jitted == null) {
+        CompiledTemplate c = BytecodeCompiler.compile(this);
+        c.jitted = c;
+        jitted = c;
+      }
+      return jitted;
+    }
+  }
+
+  private void renderTree(RenderState st, Scope vars, RenderOutput out) throws Exception {
+    if (extendsFile == null) { Node.renderAll(nodes, st, vars, out); return; }
+
+    MoplaEvents.Layout ev = MoplaEvents.enabled(MoplaEvents.LAYOUT) ? new MoplaEvents.Layout() : null;
+    if (ev != null) ev.begin();
+    MoplaMetrics m = st.metrics;
+    long t0 = m == null ? 0 : System.nanoTime();
+    LayoutPlan p = plan;
+    boolean resolved = p == null || (st.processor.devMode() && !p.current(st.processor));
+    if (resolved) plan = p = LayoutPlan.build(this, st.processor, jitted == this);
+    if (m != null) m.layout(name.replace('\\', '/'), System.nanoTime() - t0);
+    String[] prevVals = st.slotValues;
+    Node[][] prevBodies = st.slotBodies;
+    Scope prevScope = st.slotScope;
+    try {
+      if (p.streaming) {
+        // con @flush el layout no espera a las secciones: el <head> sale antes de renderizar el cuerpo
+        st.slotValues = null;
+        st.slotBodies = p.slotBodies;
+        st.slotScope = vars;
+      } else {
+        // las secciones se renderizan antes que el layout (un @set en ellas es visible en el layout)
+        String[] vals = new String[p.slotBodies.length];
+        st.slotBodies = null;
+        st.slotValues = vals;
+        for (int i=0;i<vals.length;i++) {
+          StringBuilder sb = new StringBuilder();
+          Node.renderAll(p.slotBodies[i], st, vars, RenderOutput.of(sb));
+          vals[i] = sb.toString();
+        }
+      }
+      Node.renderAll(p.root, st, vars, out);
+    } finally {
+      st.slotValues = prevVals;
+      st.slotBodies = prevBodies;
+      st.slotScope = prevScope;
+    }
+    if (ev != null && ev.shouldCommit()) {
+      ev.template = name.replace('\\', '/');
+      ev.layout = p.layoutFiles.length == 0 ? null : p.layoutFiles[p.layoutFiles.length - 1];
+      ev.depth = p.layoutFiles.length;
+      ev.resolved = resolved;
+      ev.commit();
+    }
+  }
+
+  /** Copia con un @flush tras cada {@code </head>} literal (opción flushAfterHead). */
+  CompiledTemplate withFlushAfterHead() {
+    try {
+      Map<String, Node[]> secs = new LinkedHashMap<>();
+      for (Map.Entry<String, Node[]> e : sections.entrySet()) secs.put(e.getKey(), flushAfterHead(e.getValue()));
+      return new CompiledTemplate(name, flushAfterHead(nodes), extendsFile, secs);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static Node[] flushAfterHead(Node[] body) throws Exception {
+    List<Node> out = new ArrayList<>(body.length);
+    for (Node n : body) {
+      if (n instanceof Nodes.Text txt) {
+        String s = txt.text;
+        int from = 0, at;
+        while ((at = TemplateUtils.indexOfIgnoreCase(s, "</head>", from)) >= 0) {
+          out.add(new Nodes.Text(s.substring(from, at + 7)));
+          out.add(new Nodes.Flush());
+          from = at + 7;
+        }
+        if (from == 0) out.add(n);
+        else if (from < s.length()) out.add(new Nodes.Text(s.substring(from)));
+      } else {
+        out.add(n.withBodies(CompiledTemplate::flushAfterHead));
+      }
+    }
+    return out.size() == body.length ? body : out.toArray(new Node[0]);
+  }
+
+
+  // cadena @extend resuelta (se arma en el primer render; en producción no vuelve a mirar los layouts)
+  private volatile LayoutPlan plan;
+
+  /**
+   * Cadena hijo → layout → ... → layout raíz aplanada: los cuerpos de las secciones de cada nivel
+   * en orden de evaluación (slots) y los nodos del layout raíz, con cada @yield ya reemplazado por
+   * el slot del nivel anterior. Renderizar = llenar los slots y recorrer {@code root}.
+   */
+  static final class LayoutPlan {
+    private static final Node[] EMPTY = new Node[0];
+
+    final String[] layoutFiles;
+    final CompiledTemplate[] layouts;
+    final Node[][] slotBodies;
+    final Node[] root;
+    // hay algún @flush: las secciones se renderizan en su @yield en vez de antes del layout
+    final boolean streaming;
+
+    private LayoutPlan(String[] layoutFiles, CompiledTemplate[] layouts, Node[][] slotBodies, Node[] root, boolean streaming) {
+      this.layoutFiles = layoutFiles; this.layouts = layouts; this.slotBodies = slotBodies; this.root = root;
+      this.streaming = streaming;
+    }
+
+    /** devMode: los layouts del cache siguen siendo los mismos objetos (si no, alguno cambió). */
+    boolean current(TemplateProcessor proc) throws java.io.IOException {
+      for (int i=0;i<layouts.length;i++) if (proc.loadLayout(layoutFiles[i]) != layouts[i]) return false;
+      return true;
+    }
+
+    /**
+     * {@code child} con su árbol interpretado (las secciones del tier 2 se compilan aquí, después de
+     * buscar @flush en ellas).
+     */
+    static LayoutPlan build(CompiledTemplate child, TemplateProcessor proc, boolean jit) throws Exception {
+      List<String> files = new ArrayList<>();
+      List<CompiledTemplate> chain = new ArrayList<>();
+      Set<String> seen = new HashSet<>();
+      seen.add(child.name);
+      CompiledTemplate level = child;
+      while (level.extendsFile != null) {
+        String file = level.extendsFile;
+        CompiledTemplate layout = proc.loadLayout(file);
+        files.add(file);
+        chain.add(layout);
+        if (layout == null) {
+          // layout inexistente: el render queda vacío
+          return new LayoutPlan(files.toArray(new String[0]), chain.toArray(new CompiledTemplate[0]), new Node[0][], EMPTY, false);
+        }
+        if (!seen.add(layout.name)) throw new IllegalStateException("Ciclo de @extend: " + child.name + " -> " + String.join(" -> ", files));
+        level = layout;
+      }
+
+      // nivel 0 (el hijo): sus @yield no tienen nivel anterior, quedan como variable
+      List<Node[]> slots = new ArrayList<>();
+      Map<String,Integer> prevSlots = new HashMap<>();
+      boolean streaming = false;
+      for (Map.Entry<String, Node[]> e : child.sections.entrySet()) {
+        prevSlots.put(e.getKey(), slots.size());
+        slots.add(jit ? BytecodeCompiler.compileOrKeep(e.getValue()) : e.getValue());
+        streaming |= hasFlush(e.getValue());
+      }
+      for (int i=0;i<chain.size()-1;i++) {
+        Map<String,Integer> cur = new HashMap<>();
+        for (Map.Entry<String, Node[]> e : chain.get(i).sections.entrySet()) {
+          streaming |= hasFlush(e.getValue());
+          Node[] body = fill(e.getValue(), prevSlots, jit);
+          cur.put(e.getKey(), slots.size());
+          slots.add(body);
+        }
+        prevSlots = cur;
+      }
+      Node[] rootNodes = chain.get(chain.size()-1).nodes;
+      streaming |= hasFlush(rootNodes);
+      Node[] root = fill(rootNodes, prevSlots, jit);
+      return new LayoutPlan(files.toArray(new String[0]), chain.toArray(new CompiledTemplate[0]), slots.toArray(new Node[0][]), root, streaming);
+    }
+
+    private static Node[] fill(Node[] body, Map<String,Integer> slots, boolean jit) throws Exception {
+      Node[] out = yieldsToSlots(body, slots);
+      return jit ? BytecodeCompiler.compileOrKeep(out) : out;
+    }
+
+    private static boolean hasFlush(Node[] body) throws Exception {
+      boolean[] found = { false };
+      for (Node n : body) {
+        if (n instanceof Nodes.Flush) return true;
+        n.withBodies(inner -> { found[0] |= hasFlush(inner); return inner; });
+        if (found[0]) return true;
+      }
+      return false;
+    }
+
+    // @yield("x") → slot de la sección x del nivel anterior; si no la define, nada
+    private static Node[] yieldsToSlots(Node[] body, Map<String,Integer> slots) throws Exception {
+      List<Node> out = new ArrayList<>(body.length);
+      for (Node n : body) {
+        if (n instanceof Nodes.Yield y) {
+          Integer idx = slots.get(y.name);
+          if (idx != null) out.add(new Nodes.Slot(idx));
+        } else {
+          out.add(n.withBodies(b -> yieldsToSlots(b, slots)));
+        }
+      }
+      return out.toArray(new Node[0]);
+    }
+  }
+}
@@ -8,6 +8,8 @@ import java.time.format.DateTimeFormatter;
 import java.util.Map;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 final class DefaultFilters {
   private DefaultFilters() {}
@@ -16,11 +18,12 @@ final class DefaultFilters {
     registry.put("upper",  (v,a)-> Objects.toString(v,"").toUpperCase());
     registry.put("lower",  (v,a)-> Objects.toString(v,"").toLowerCase());
     registry.put("trim",   (v,a)-> Objects.toString(v,"").trim());
-    registry.put("number", (v,a)-> {
-      String pat = (a.length>0 ? a[0] : "#,##0.##");
-      DecimalFormat df = new DecimalFormat(pat);
-      if (v instanceof Number n) return df.format(n);
-      return df.format(new java.math.BigDecimal(Objects.toString(v,"0")));
+    registry.put("number", new Filter() {
+      public String apply(Object v, String... a) { return formatNumber(numberFormat(a).get(), v); }
+      @Override public BoundFilter bind(String... a) {
+        ThreadLocal<DecimalFormat> df = numberFormat(a);
+        return v -> formatNumber(df.get(), v);
+      }
     });
 
     // extras tipo Thymeleaf
@@ -28,17 +31,12 @@ final class DefaultFilters {
       String s = Objects.toString(v,"");
       return s.isEmpty() ? (a.length>0?a[0]:"") : s;
     });
-    registry.put("date", (v,a)-> {
-      String p = (a.length>0 ? a[0] : "yyyy-MM-dd");
-      DateTimeFormatter fmt = DateTimeFormatter.ofPattern(p);
-      if (v == null) return "";
-      if (v instanceof LocalDate ld) return ld.format(fmt);
-      if (v instanceof LocalDateTime ldt) return ldt.format(fmt);
-      if (v instanceof Instant i) return fmt.withZone(ZoneId.systemDefault()).format(i);
-      String s = Objects.toString(v,"");
-      try { return LocalDate.parse(s).format(fmt); } catch(Exception ignore){}
-      try { return LocalDateTime.parse(s).format(fmt); } catch(Exception ignore){}
-      return s;
+    registry.put("date", new Filter() {
+      public String apply(Object v, String... a) { return formatDate(dateFormat(a), v); }
+      @Override public BoundFilter bind(String... a) {
+        DateTimeFormatter fmt = dateFormat(a);
+        return v -> formatDate(fmt, v);
+      }
     });
     registry.put("join", (v,a)-> {
       String sep = (a.length>0 ? a[0] : ",");
@@ -59,12 +57,12 @@ final class DefaultFilters {
       return s.substring(0,1).toUpperCase() + (s.length()>1 ? s.substring(1) : "");
     });
 
-    registry.put("truncate", (v,a) -> {
-      String s = Objects.toString(v, "");
-      int len = 0;
-      try { len = (a.length>0) ? Integer.parseInt(a[0]) : 0; } catch(Exception e) { len = 0; }
-      if (len <= 0 || s.length() <= len) return s;
-      return s.substring(0, Math.max(0, len)) + "...";
+    registry.put("truncate", new Filter() {
+      public String apply(Object v, String... a) { return truncate(v, truncateLength(a)); }
+      @Override public BoundFilter bind(String... a) {
+        int len = truncateLength(a);
+        return v -> truncate(v, len);
+      }
     });
 
     registry.put("replace", (v,a) -> {
@@ -73,11 +71,63 @@ final class DefaultFilters {
       return s.replace(a[0], a[1]);
     });
 
-    registry.put("split", (v,a) -> {
-      String s = Objects.toString(v, "");
-      String sep = (a.length>0 ? a[0] : ",");
-      if (s.isEmpty()) return "";
-      return java.util.Arrays.toString(s.split(java.util.regex.Pattern.quote(sep)));
+    registry.put("split", new Filter() {
+      public String apply(Object v, String... a) { return split(v, splitPattern(a)); }
+      @Override public BoundFilter bind(String... a) {
+        Pattern sep = splitPattern(a);
+        return v -> split(v, sep);
+      }
     });
   }
+
+  /* ===== Formatos cacheados (por patrón; DecimalFormat no es thread-safe) ===== */
+
+  private static final Map<String, ThreadLocal<DecimalFormat>> NUMBER_FORMATS = new ConcurrentHashMap<>();
+  private static final Map<String, DateTimeFormatter> DATE_FORMATS = new ConcurrentHashMap<>();
+
+  private static ThreadLocal<DecimalFormat> numberFormat(String[] a) {
+    String pat = (a.length>0 ? a[0] : "#,##0.##");
+    return NUMBER_FORMATS.computeIfAbsent(pat, p -> ThreadLocal.withInitial(() -> new DecimalFormat(p)));
+  }
+
+  private static String formatNumber(DecimalFormat df, Object v) {
+    if (v instanceof Number n) return df.format(n);
+    return df.format(new java.math.BigDecimal(Objects.toString(v,"0")));
+  }
+
+  private static DateTimeFormatter dateFormat(String[] a) {
+    String pat = (a.length>0 ? a[0] : "yyyy-MM-dd");
+    return DATE_FORMATS.computeIfAbsent(pat, DateTimeFormatter::ofPattern);
+  }
+
+  private static String formatDate(DateTimeFormatter fmt, Object v) {
+    if (v == null) return "";
+    if (v instanceof LocalDate ld) return ld.format(fmt);
+    if (v instanceof LocalDateTime ldt) return ldt.format(fmt);
+    if (v instanceof Instant i) return fmt.withZone(ZoneId.systemDefault()).format(i);
+    String s = Objects.toString(v,"");
+    try { return LocalDate.parse(s).format(fmt); } catch(Exception ignore){}
+    try { return LocalDateTime.parse(s).format(fmt); } catch(Exception ignore){}
+    return s;
+  }
+
+  private static int truncateLength(String[] a) {
+    try { return (a.length>0) ? Integer.parseInt(a[0]) : 0; } catch(Exception e) { return 0; }
+  }
+
+  private static String truncate(Object v, int len) {
+    String s = Objects.toString(v, "");
+    if (len <= 0 || s.length() <= len) return s;
+    return s.substring(0, len) + "...";
+  }
+
+  private static Pattern splitPattern(String[] a) {
+    return Pattern.compile(Pattern.quote(a.length>0 ? a[0] : ","));
+  }
+
+  private static String split(Object v, Pattern sep) {
+    String s = Objects.toString(v, "");
+    if (s.isEmpty()) return "";
+    return java.util.Arrays.toString(sep.split(s));
+  }
 }
@@ -0,0 +1,169 @@
+package com.ronaldbit.mopla;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.RecordComponent;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * ETag de un render calculado sin renderizar: versión (hash del texto) de la plantilla, de su cadena
+ * @extend y de sus @include, URLs de sus @asset, generación de los filtros registrados y un hash de
+ * los valores que referencian.
+ *
+ * Solo se hashean datos simples (texto, números, enums, java.time, Map, colecciones, arrays y
+ * records de esos tipos). Un bean, un Iterator/Stream (de un solo uso) o un valor diferido hacen que
+ * no se pueda derivar (null): el render sigue como siempre, sin ETag. Tampoco si alguna plantilla
+ * alcanzada tiene un @cache: el fragmento guardado puede salir de otro modelo o vencer.
+ */
+final class ETags {
+  private ETags() {}
+
+  // colecciones anidadas más profundo que esto no se hashean (ciclos, grafos enormes)
+  private static final int MAX_DEPTH = 16;
+
+  /** Qué hashear en cada render: plantillas ya combinadas en {@code hash} y variables referenciadas. */
+  static final class Plan {
+    static final Plan NONE = new Plan(0, List.of(), false);
+
+    final long hash;
+    final List<VarPath> refs;
+    final boolean derivable;
+
+    Plan(long hash, List<VarPath> refs, boolean derivable) {
+      this.hash = hash; this.refs = refs; this.derivable = derivable;
+    }
+
+    /** La salida no depende del modelo. */
+    boolean isStatic() { return derivable && refs.isEmpty(); }
+  }
+
+  static Plan plan(TemplateProcessor p, CompiledTemplate t) throws IOException {
+    Hasher h = new Hasher(0);
+    h.mix(p.devMode() ? 1 : 0); // @dump
+    h.mix(p.minify() ? 1 : 0);
+    h.mix(p.filterGeneration()); // un register() cambia la salida sin cambiar el texto
+    Set<VarPath> refs = new LinkedHashSet<>();
+    Set<CompiledTemplate> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<CompiledTemplate> todo = new ArrayDeque<>();
+    seen.add(t);
+    todo.add(t);
+    while (!todo.isEmpty()) {
+      CompiledTemplate c = todo.poll();
+      if (c.hasFragmentCache()) return Plan.NONE;
+      h.mix(c.version);
+      refs.addAll(c.variables());
+      for (String a : c.assets()) h.chars(p.asset(a));
+      for (String dep : c.dependencies()) {
+        Path file;
+        try { file = p.resolve(dep, "Include"); }
+        catch (SecurityException e) { return Plan.NONE; } // el render falla
+        CompiledTemplate d = p.find(file);
+        h.chars(dep);
+        h.mix(d == null ? 0 : 1); // un include inexistente no renderiza nada
+        if (d != null && seen.add(d)) todo.add(d);
+      }
+    }
+    return new Plan(h.h, List.copyOf(refs), true);
+  }
+
+  /** {@code W/"..."} para estos valores; null si alguno no se puede hashear. */
+  static String etag(Plan p, Scope vars) {
+    if (!p.derivable) return null;
+    if (LazyValues.anyLazy(vars, p.refs)) return null;
+    Hasher h = new Hasher(p.hash);
+    for (VarPath r : p.refs) {
+      if (!h.value(TemplateUtils.resolveVar(vars, r), 0)) return null;
+    }
+    return "W/\"" + Long.toHexString(h.finish()) + "\"";
+  }
+
+  /** Hash de 64 bits de un texto (versión de una plantilla). */
+  static long hash(String text) {
+    Hasher h = new Hasher(0);
+    h.chars(text);
+    return h.finish();
+  }
+
+  /** FNV-1a de 64 bits con mezcla final; cada valor lleva tipo y largo para que no se confundan. */
+  private static final class Hasher {
+    private static final long PRIME = 0x100000001b3L;
+    long h;
+
+    Hasher(long seed) { h = 0xcbf29ce484222325L ^ seed; }
+
+    void mix(long v) {
+      for (int i=0;i<64;i+=16) { h ^= (v >>> i) & 0xffff; h *= PRIME; }
+    }
+
+    void chars(CharSequence s) {
+      mix(s.length());
+      for (int i=0;i<s.length();i++) { h ^= s.charAt(i); h *= PRIME; }
+    }
+
+    long finish() {
+      long x = h;
+      x ^= x >>> 33; x *= 0xff51afd7ed558ccdL;
+      x ^= x >>> 33; x *= 0xc4ceb9fe1a85ec53L;
+      return x ^ (x >>> 33);
+    }
+
+    boolean value(Object v, int depth) {
+      if (depth > MAX_DEPTH) return false;
+      if (v == null) { mix(0); return true; }
+      if (v instanceof CharSequence s) {
+        mix(v instanceof SafeHtml ? 2 : 1);
+        chars(s);
+        return true;
+      }
+      if (isScalar(v)) {
+        // como se imprime (toString), con la clase: 1 y 1.0 no son el mismo valor
+        mix(3);
+        chars(v.getClass().getName());
+        chars(v.toString());
+        return true;
+      }
+      if (v instanceof Map<?,?> m) {
+        mix(4);
+        mix(m.size());
+        for (Map.Entry<?,?> e : m.entrySet()) {
+          if (!value(e.getKey(), depth + 1) || !value(e.getValue(), depth + 1)) return false;
+        }
+        return true;
+      }
+      if (v instanceof Collection<?> c) {
+        mix(5);
+        mix(c.size());
+        for (Object o : c) if (!value(o, depth + 1)) return false;
+        return true;
+      }
+      if (v.getClass().isArray()) {
+        int n = Array.getLength(v);
+        mix(6);
+        mix(n);
+        for (int i=0;i<n;i++) if (!value(Array.get(v, i), depth + 1)) return false;
+        return true;
+      }
+      if (v instanceof Record) return record(v, depth);
+      return false; // bean, Iterator, Stream, Supplier...: no se sabe qué imprime sin renderizar
+    }
+
+    // componentes con los mismos accesores que usa el render
+    private boolean record(Object v, int depth) {
+      mix(7);
+      chars(v.getClass().getName());
+      for (RecordComponent c : v.getClass().getRecordComponents()) {
+        if (!value(PropertyAccessors.get(v, c.getName()), depth + 1)) return false;
+      }
+      return true;
+    }
+
+    private static boolean isScalar(Object v) {
+      if (TemplateUtils.isPlainScalar(v) || v instanceof Character || v instanceof Enum<?> || v instanceof UUID) return true;
+      // java.time y demás valores inmutables del JDK con toString estable
+      return (v instanceof java.time.temporal.TemporalAccessor || v instanceof java.time.temporal.TemporalAmount
+          || v instanceof java.time.ZoneId || v instanceof Locale)
+          && v.getClass().getName().startsWith("java.");
+    }
+  }
+}
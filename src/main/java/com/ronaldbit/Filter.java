@@ -3,4 +3,12 @@ package com.ronaldbit.mopla;
 @FunctionalInterface
 public interface Filter {
   String apply(Object value, String... args);
+
+  /**
+   * Vincula argumentos constantes una sola vez, al compilar la plantilla. Los filtros caros de
+   * preparar (formatos, patrones) pueden sobrescribirlo; por defecto delega en {@link #apply}.
+   */
+  default BoundFilter bind(String... args) {
+    return value -> apply(value, args);
+  }
 }
@@ -0,0 +1,53 @@
+package com.ronaldbit.mopla;
+
+import java.util.*;
+
+/** Pipe de filtros de un @var compilado una vez: "x|number:\"#,##0.00\"|default:\"-\"". */
+final class FilterChain {
+  private final BoundFilter[] filters;
+  private final String[] names; // para métricas
+
+  private FilterChain(BoundFilter[] filters, String[] names) { this.filters = filters; this.names = names; }
+
+  /** Parsea y vincula la cadena contra el registro; los filtros desconocidos se ignoran. Null si queda vacía. */
+  static FilterChain compile(String chain, Map<String, Filter> registry) {
+    List<BoundFilter> out = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (String rawF : chain.split("\\|")) {
+      rawF = rawF.trim();
+      if (rawF.isEmpty()) continue;
+      String fname;
+      String[] fargs = new String[0];
+      int colon = rawF.indexOf(':');
+      if (colon >= 0) {
+        fname = rawF.substring(0, colon).trim();
+        fargs = TemplateUtils.parseArgs(rawF.substring(colon+1));
+      } else {
+        fname = rawF;
+      }
+      Filter f = registry.get(fname);
+      if (f != null) { out.add(f.bind(fargs)); names.add(fname); }
+    }
+    return out.isEmpty() ? null : new FilterChain(out.toArray(new BoundFilter[0]), names.toArray(new String[0]));
+  }
+
+  Object apply(Object val) {
+    if (MoplaEvents.enabled(MoplaEvents.FILTER)) return apply(val, null);
+    for (BoundFilter f : filters) val = f.apply(val);
+    return val;
+  }
+
+  /** Igual que {@link #apply(Object)}, midiendo cada filtro ({@code metrics} null: solo el evento JFR). */
+  Object apply(Object val, MoplaMetrics metrics) {
+    boolean jfr = MoplaEvents.enabled(MoplaEvents.FILTER);
+    for (int i=0;i<filters.length;i++) {
+      MoplaEvents.Filter ev = jfr ? new MoplaEvents.Filter() : null;
+      if (ev != null) ev.begin();
+      long t0 = metrics == null ? 0 : System.nanoTime();
+      val = filters[i].apply(val);
+      if (metrics != null) metrics.filter(names[i], System.nanoTime() - t0);
+      if (ev != null && ev.shouldCommit()) { ev.filter = names[i]; ev.commit(); }
+    }
+    return val;
+  }
+}
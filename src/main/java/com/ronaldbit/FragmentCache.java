@@ -0,0 +1,149 @@
+package com.ronaldbit.mopla;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Salida cacheada de bloques @cache("key", ttl:"60s"), compartida entre renders. Acotada por peso
+ * estimado en bytes: al pasarse se descartan primero los vencidos y luego los menos usados
+ * recientemente. Una lectura no toma locks (solo marca el último acceso).
+ *
+ * Cada fragmento recuerda las plantillas de las que salió (la que tiene el @cache y lo incluido
+ * dentro, también por @cache anidados): al invalidarse una plantilla solo se descartan esos.
+ */
+final class FragmentCache {
+  static final long DEFAULT_MAX_WEIGHT = 32L << 20;
+
+  static final class Fragment {
+    final String text;
+    final byte[] utf8;
+    final long expiresAt; // System.nanoTime(); Long.MAX_VALUE = sin ttl
+    final long weight;
+    final Set<String> sources; // nombres relativos a templatesRoot
+    volatile long lastAccess;
+
+    Fragment(String text, long expiresAt, Set<String> sources) {
+      this.text = text;
+      this.sources = sources;
+      this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+      this.expiresAt = expiresAt;
+      this.weight = 2L * text.length() + utf8.length + 64;
+    }
+
+    boolean expired(long now) { return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0; }
+  }
+
+  private final long maxWeight; // <= 0: sin límite
+  private final ConcurrentHashMap<String, Fragment> map = new ConcurrentHashMap<>();
+  private final AtomicLong weight = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder renders = new LongAdder();
+  private final LongAdder renderNanos = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  FragmentCache(long maxWeight) { this.maxWeight = maxWeight; }
+
+  /** Fragmento vigente o null (cuenta hit/miss). */
+  Fragment get(String key) {
+    Fragment f = map.get(key);
+    if (f != null && f.expired(System.nanoTime())) {
+      remove(key, f);
+      f = null;
+    }
+    if (f == null) { misses.increment(); return null; }
+    hits.increment();
+    f.lastAccess = System.nanoTime();
+    return f;
+  }
+
+  /** Guarda la salida de un bloque recién renderizado ({@code ttlMillis} <= 0: sin vencimiento). */
+  Fragment put(String key, String text, long ttlMillis, long renderNanos, Set<String> sources) {
+    this.renders.increment();
+    this.renderNanos.add(renderNanos);
+    long expires = ttlMillis > 0 ? System.nanoTime() + ttlMillis * 1_000_000L : Long.MAX_VALUE;
+    Fragment f = new Fragment(text, expires, Set.copyOf(sources));
+    f.lastAccess = System.nanoTime();
+    if (maxWeight > 0 && f.weight > maxWeight) return f; // no entra: se usa sin cachear
+    Fragment old = map.put(key, f);
+    weight.addAndGet(f.weight - (old == null ? 0 : old.weight));
+    if (maxWeight > 0 && weight.get() > maxWeight) evict();
+    return f;
+  }
+
+  private void remove(String key, Fragment f) {
+    if (map.remove(key, f)) weight.addAndGet(-f.weight);
+  }
+
+  // baja al 90% del máximo: vencidos primero, luego por último acceso
+  private synchronized void evict() {
+    long target = maxWeight - maxWeight / 10;
+    if (weight.get() <= maxWeight) return;
+    long now = System.nanoTime();
+    // se copia lastAccess: los hits concurrentes no deben mover el orden durante el sort
+    List<Candidate> live = new ArrayList<>();
+    for (Map.Entry<String, Fragment> e : map.entrySet()) {
+      Fragment f = e.getValue();
+      if (f.expired(now)) remove(e.getKey(), f);
+      else live.add(new Candidate(e.getKey(), f, f.lastAccess));
+    }
+    if (weight.get() <= target) return;
+    live.sort((a, b) -> Long.compare(a.access, b.access));
+    for (Candidate c : live) {
+      if (weight.get() <= target) break;
+      if (map.remove(c.key, c.fragment)) {
+        weight.addAndGet(-c.fragment.weight);
+        evictions.increment();
+      }
+    }
+  }
+
+  private static final class Candidate {
+    final String key; final Fragment fragment; final long access;
+    Candidate(String key, Fragment fragment, long access) { this.key = key; this.fragment = fragment; this.access = access; }
+  }
+
+  void invalidate(String key) {
+    Fragment f = map.get(key);
+    if (f != null) remove(key, f);
+  }
+
+  void invalidatePrefix(String prefix) {
+    map.forEach((k, f) -> { if (k.startsWith(prefix)) remove(k, f); });
+  }
+
+  void clear() {
+    map.forEach(this::remove);
+  }
+
+  /**
+   * Descarta los fragmentos que salieron de alguna de {@code templates} o de lo que cuelga de ellas
+   * si son directorios (null: todos).
+   */
+  void invalidateTemplates(Set<String> templates) {
+    if (templates == null) { clear(); return; }
+    map.forEach((k, f) -> {
+      for (String s : f.sources) {
+        if (affected(s, templates)) { remove(k, f); return; }
+      }
+    });
+  }
+
+  private static boolean affected(String source, Set<String> templates) {
+    if (templates.contains(source)) return true;
+    for (String t : templates) if (source.startsWith(t + "/") || t.isEmpty()) return true;
+    return false;
+  }
+
+  CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), renders.sum(), renderNanos.sum(), evictions.sum(),
+        map.size(), weight.get(), Math.max(0, maxWeight), 0);
+  }
+}
@@ -0,0 +1,206 @@
+package com.ronaldbit.mopla;
+
+import java.util.*;
+
+/**
+ * Minificación al compilar (opción {@code minify}): reescribe solo los nodos de texto literal, así
+ * que no cuesta nada por render.
+ * <ul>
+ *   <li>Espacios con salto de línea (indentación) entre tags se eliminan si uno de los dos es de bloque:
+ *       {@code </li>\n    <li>} → {@code </li><li>}. Entre dos inline ({@code </a>\n<a>}) quedan en uno,
+ *       porque ahí el espacio se ve.</li>
+ *   <li>Cualquier otra secuencia de espacios queda en uno solo (un salto si tenía uno).</li>
+ *   <li>Comentarios {@code <!-- -->} completos se eliminan (salvo los condicionales {@code <!--[if}).</li>
+ *   <li>El contenido de {@code <pre>}, {@code <textarea>}, {@code <script>} y {@code <style>} y los
+ *       valores de atributos entre comillas quedan intactos.</li>
+ * </ul>
+ * El estado (dentro de un tag, de un atributo, de un {@code <pre>}...) sigue a través de los nodos
+ * dinámicos: {@code <pre>@var(x)  </pre>} no se toca.
+ */
+final class HtmlMinifier {
+  private static final String[] RAW_ELEMENTS = { "pre", "textarea", "script", "style" };
+  // el espacio entre estos y lo que los rodea no se ve (display: block o no se renderizan)
+  private static final Set<String> BLOCK_ELEMENTS = Set.of(
+      "html", "head", "body", "title", "meta", "link", "base", "script", "style", "noscript", "template",
+      "div", "p", "ul", "ol", "li", "dl", "dt", "dd", "table", "thead", "tbody", "tfoot", "tr", "td", "th",
+      "caption", "colgroup", "col", "section", "article", "header", "footer", "nav", "aside", "main",
+      "h1", "h2", "h3", "h4", "h5", "h6", "hgroup", "form", "fieldset", "legend", "hr", "br", "pre",
+      "blockquote", "figure", "figcaption", "address", "details", "summary", "dialog", "menu",
+      "option", "optgroup", "select", "picture", "source", "video", "audio", "iframe", "canvas", "svg");
+
+  private static final int TEXT = 0, TAG = 1, DQ = 2, SQ = 3, RAW = 4, COMMENT = 5;
+
+  private int state = TEXT;
+  private String rawEnd;          // "</pre" en estado RAW
+  private String tagName;         // nombre del tag abierto en estado TAG ("" si es de cierre)
+  private boolean afterTag;       // lo último emitido fue un '>' (para quitar indentación entre tags)
+  private boolean tagBlock;       // el tag abierto en estado TAG es de bloque (o doctype/comentario)
+  private boolean afterBlock;     // ese '>' cerró un tag de bloque
+
+  private HtmlMinifier() {}
+
+  static CompiledTemplate minify(CompiledTemplate t) {
+    try {
+      Node[] nodes = new HtmlMinifier().body(t.nodes);
+      Map<String, Node[]> sections = new LinkedHashMap<>();
+      for (Map.Entry<String, Node[]> e : t.sections.entrySet()) sections.put(e.getKey(), new HtmlMinifier().body(e.getValue()));
+      return new CompiledTemplate(t.name, nodes, t.extendsFile, sections);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private Node[] body(Node[] in) throws Exception {
+    List<Node> out = new ArrayList<>(in.length);
+    for (Node n : in) {
+      if (n instanceof Nodes.Text txt) {
+        String s = text(txt.text);
+        if (s.equals(txt.text)) out.add(n);
+        else if (!s.isEmpty()) out.add(new Nodes.Text(s));
+        continue;
+      }
+      // cada rama (@if/@else) arranca del mismo estado; sigue el de la última
+      int st = state; String re = rawEnd, tn = tagName; boolean tb = tagBlock;
+      Node m = n.withBodies(b -> {
+        state = st; rawEnd = re; tagName = tn; tagBlock = tb;
+        afterTag = false;
+        return body(b);
+      });
+      afterTag = false; // lo dinámico puede terminar en cualquier cosa
+      out.add(m);
+    }
+    return out.size() == in.length && sameNodes(in, out) ? in : out.toArray(new Node[0]);
+  }
+
+  private static boolean sameNodes(Node[] in, List<Node> out) {
+    for (int i=0;i<in.length;i++) if (in[i] != out.get(i)) return false;
+    return true;
+  }
+
+  private String text(String s) {
+    StringBuilder out = new StringBuilder(s.length());
+    int i = 0, len = s.length();
+    while (i < len) {
+      char c = s.charAt(i);
+      switch (state) {
+        case RAW -> {
+          int end = TemplateUtils.indexOfIgnoreCase(s, rawEnd, i);
+          int stop = end < 0 ? len : end;
+          out.append(s, i, stop);
+          i = stop;
+          if (end >= 0) state = TEXT;
+          afterTag = false;
+        }
+        case COMMENT -> {
+          int end = s.indexOf("-->", i);
+          int stop = end < 0 ? len : end + 3;
+          out.append(s, i, stop);
+          i = stop;
+          if (end >= 0) { state = TEXT; afterTag = true; afterBlock = true; }
+        }
+        case DQ, SQ -> {
+          int end = s.indexOf(state == DQ ? '"' : '\'', i);
+          int stop = end < 0 ? len : end + 1;
+          out.append(s, i, stop);
+          i = stop;
+          if (end >= 0) state = TAG;
+        }
+        case TAG -> {
+          if (Character.isWhitespace(c)) {
+            int j = skipWs(s, i);
+            // <a   href> → <a href>; antes de '>' o '/>' no hace falta
+            if (j < len && s.charAt(j) != '>' && !(s.charAt(j) == '/' && j+1 < len && s.charAt(j+1) == '>')) out.append(' ');
+            else if (j == len) out.append(' ');
+            i = j;
+            continue;
+          }
+          out.append(c);
+          i++;
+          if (c == '"') state = DQ;
+          else if (c == '\'') state = SQ;
+          else if (c == '>') {
+            state = TEXT;
+            afterTag = true;
+            afterBlock = tagBlock;
+            if (tagName != null && isRawElement(tagName)) { state = RAW; rawEnd = "</" + tagName; }
+            tagName = null;
+          }
+        }
+        default -> { // TEXT
+          if (Character.isWhitespace(c)) {
+            int j = skipWs(s, i);
+            boolean newline = hasNewline(s, i, j);
+            boolean beforeTag = j < len && s.charAt(j) == '<';
+            // entre dos inline (</a>\n<a>) el espacio se ve: se deja uno
+            boolean invisible = newline && afterTag && beforeTag && (afterBlock || isBlockAt(s, j));
+            if (!invisible) out.append(newline ? '\n' : ' ');
+            i = j;
+            continue;
+          }
+          if (c == '<' && s.startsWith("<!--", i)) {
+            int end = s.indexOf("-->", i + 4);
+            boolean conditional = s.startsWith("<!--[if", i) || s.startsWith("<!--<![endif]", i);
+            if (end >= 0 && !conditional) { i = end + 3; continue; } // afterTag se mantiene
+            int stop = end < 0 ? len : end + 3;
+            out.append(s, i, stop);
+            i = stop;
+            if (end < 0) state = COMMENT; else { afterTag = true; afterBlock = true; }
+            continue;
+          }
+          if (c == '<' && i+1 < len && isTagStart(s.charAt(i+1))) {
+            state = TAG;
+            int n = i + 1;
+            boolean closing = s.charAt(n) == '/';
+            if (closing) n++;
+            int nameEnd = n;
+            while (nameEnd < len && Character.isLetterOrDigit(s.charAt(nameEnd))) nameEnd++;
+            String name = s.substring(n, nameEnd);
+            tagName = closing ? "" : name;
+            tagBlock = isBlock(name);
+            out.append(s, i, nameEnd);
+            i = nameEnd;
+            continue;
+          }
+          out.append(c);
+          afterTag = false;
+          i++;
+        }
+      }
+    }
+    return out.toString();
+  }
+
+  private static boolean isTagStart(char c) {
+    return c == '/' || c == '!' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  // "" es <!DOCTYPE ...> o similar
+  private static boolean isBlock(String name) {
+    return name.isEmpty() || BLOCK_ELEMENTS.contains(name.toLowerCase(Locale.ROOT));
+  }
+
+  // tag que empieza en s[i] ('<')
+  private static boolean isBlockAt(String s, int i) {
+    int n = i + 1;
+    if (n < s.length() && s.charAt(n) == '!') return true; // comentario, doctype
+    if (n < s.length() && s.charAt(n) == '/') n++;
+    int end = n;
+    while (end < s.length() && Character.isLetterOrDigit(s.charAt(end))) end++;
+    return end > n && isBlock(s.substring(n, end));
+  }
+
+  private static boolean isRawElement(String name) {
+    for (String r : RAW_ELEMENTS) if (r.equalsIgnoreCase(name)) return true;
+    return false;
+  }
+
+  private static int skipWs(String s, int i) {
+    while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+    return i;
+  }
+
+  private static boolean hasNewline(String s, int from, int to) {
+    for (int i=from;i<to;i++) if (s.charAt(i) == '\n' || s.charAt(i) == '\r') return true;
+    return false;
+  }
+}
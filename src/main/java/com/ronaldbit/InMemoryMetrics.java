@@ -0,0 +1,82 @@
+package com.ronaldbit.mopla;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link MoplaMetrics} en memoria: histogramas de latencia por plantilla (render, includes, layout),
+ * por filtro, hits/misses del cache y tamaño de salida. {@link #snapshot()} da una foto para
+ * exportar (JSON, logs, un endpoint de admin); {@link #reset()} empieza una ventana nueva.
+ *
+ * <pre>
+ * InMemoryMetrics metrics = new InMemoryMetrics();
+ * Mopla m = Mopla.builder().metrics(metrics).build();
+ * ...
+ * metrics.snapshot().slowest(5)   // plantillas con peor p99
+ * </pre>
+ */
+public final class InMemoryMetrics implements MoplaMetrics {
+  private final ConcurrentHashMap<String, TemplateCounters> templates = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, LatencyHistogram> filters = new ConcurrentHashMap<>();
+
+  private static final class TemplateCounters {
+    final LatencyHistogram render = new LatencyHistogram();
+    final LatencyHistogram include = new LatencyHistogram();
+    final LatencyHistogram layout = new LatencyHistogram();
+    final LongAdder output = new LongAdder();
+    final AtomicLong maxOutput = new AtomicLong();
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder loadNanos = new LongAdder();
+  }
+
+  private TemplateCounters of(String template) {
+    TemplateCounters c = templates.get(template);
+    return c != null ? c : templates.computeIfAbsent(template, k -> new TemplateCounters());
+  }
+
+  @Override public void render(String template, long nanos, long outputSize) {
+    TemplateCounters c = of(template);
+    c.render.record(nanos);
+    c.output.add(outputSize);
+    long m = c.maxOutput.get();
+    while (outputSize > m && !c.maxOutput.compareAndSet(m, outputSize)) m = c.maxOutput.get();
+  }
+
+  @Override public void include(String template, long nanos) { of(template).include.record(nanos); }
+
+  @Override public void layout(String template, long nanos) { of(template).layout.record(nanos); }
+
+  @Override public void filter(String filter, long nanos) {
+    LatencyHistogram h = filters.get(filter);
+    if (h == null) h = filters.computeIfAbsent(filter, k -> new LatencyHistogram());
+    h.record(nanos);
+  }
+
+  @Override public void cacheHit(String template) { of(template).hits.increment(); }
+
+  @Override public void cacheMiss(String template, long loadNanos) {
+    TemplateCounters c = of(template);
+    c.misses.increment();
+    c.loadNanos.add(loadNanos);
+  }
+
+  public MetricsSnapshot snapshot() {
+    Map<String, MetricsSnapshot.TemplateStats> t = new LinkedHashMap<>();
+    templates.forEach((name, c) -> t.put(name, new MetricsSnapshot.TemplateStats(
+        c.render.snapshot(), c.include.snapshot(), c.layout.snapshot(),
+        c.output.sum(), c.maxOutput.get(), c.hits.sum(), c.misses.sum(), c.loadNanos.sum())));
+    Map<String, MetricsSnapshot.Latency> f = new LinkedHashMap<>();
+    filters.forEach((name, h) -> f.put(name, h.snapshot()));
+    return new MetricsSnapshot(t, f);
+  }
+
+  /** Descarta todo lo acumulado. */
+  public void reset() {
+    templates.clear();
+    filters.clear();
+  }
+}
@@ -0,0 +1,62 @@
+package com.ronaldbit.mopla;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias en nanosegundos, log-lineal: cada potencia de 2 se parte en 8 buckets
+ * (error relativo <= 12,5%). Tamaño fijo (~4 KB), registrar es un incremento atómico sin locks.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BITS = 3, SUB = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+    counts.incrementAndGet(index(nanos));
+    sum.add(nanos);
+    long m = max.get();
+    while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+  }
+
+  // 0..7 exactos; desde ahí, exponente + 3 bits siguientes al bit más alto
+  static int index(long v) {
+    if (v < SUB) return (int) v;
+    int exp = 63 - Long.numberOfLeadingZeros(v);
+    int sub = (int) ((v >>> (exp - SUB_BITS)) & (SUB - 1));
+    return (exp - SUB_BITS + 1) * SUB + sub;
+  }
+
+  static long lowerBound(int idx) {
+    if (idx < SUB) return idx;
+    int exp = idx / SUB + SUB_BITS - 1;
+    return (1L << exp) | ((long) (idx % SUB) << (exp - SUB_BITS));
+  }
+
+  /** Copia consistente por bucket (los renders concurrentes pueden caer en una u otra foto). */
+  MetricsSnapshot.Latency snapshot() {
+    long[] c = new long[BUCKETS];
+    long n = 0;
+    for (int i=0;i<BUCKETS;i++) { c[i] = counts.get(i); n += c[i]; }
+    long mx = max.get();
+    return new MetricsSnapshot.Latency(n, sum.sum(),
+        percentile(c, n, 0.50, mx), percentile(c, n, 0.90, mx), percentile(c, n, 0.99, mx), percentile(c, n, 0.999, mx), mx);
+  }
+
+  // límite superior del bucket donde cae el percentil (nunca más que el máximo visto)
+  private static long percentile(long[] c, long n, double q, long max) {
+    if (n == 0) return 0;
+    long rank = (long) Math.ceil(q * n);
+    long seen = 0;
+    for (int i=0;i<c.length;i++) {
+      seen += c[i];
+      if (seen >= rank) return Math.min(max, i + 1 < c.length ? lowerBound(i + 1) - 1 : Long.MAX_VALUE);
+    }
+    return max;
+  }
+}
@@ -0,0 +1,104 @@
+package com.ronaldbit.mopla;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Valores del modelo diferidos: {@link Supplier}, {@link Callable} y {@link Future}
+ * (p. ej. {@link CompletableFuture}). Se resuelven recién cuando la plantilla los usa y una sola
+ * vez por render (memo en el scope raíz), así una rama que no se renderiza no paga la consulta.
+ *
+ * Con un executor de prefetch, al empezar el render se lanzan en paralelo todos los que la
+ * plantilla referencia; cada segmento que los usa espera solo al suyo.
+ */
+final class LazyValues {
+  private LazyValues() {}
+
+  static boolean isLazy(Object v) {
+    return v instanceof Supplier || v instanceof Callable || v instanceof Future;
+  }
+
+  /** Valor real de {@code v} (o {@code v} mismo si no es diferido). */
+  static Object resolve(Scope vars, Object v) {
+    if (!isLazy(v)) return v;
+    if (v instanceof Future<?> f) return await(f);
+    Map<Object,Object> memo = vars.lazyMemo();
+    Object r = memo.get(v);
+    if (r == null) {
+      r = call(v);
+      memo.put(v, r == null ? NULL : r);
+    } else if (r instanceof PendingValue p) {
+      r = await(p.future);
+      memo.put(v, r == null ? NULL : r);
+    }
+    return r == NULL ? null : r;
+  }
+
+  /** Lanza en {@code executor} los Supplier/Callable referenciados (los Future ya corren solos). */
+  static void prefetch(Scope vars, Collection<VarPath> refs, Executor executor) {
+    Map<Object,Object> memo = null;
+    for (VarPath p : refs) {
+      for (Object v : candidates(vars, p)) {
+        if (!(v instanceof Supplier || v instanceof Callable)) continue;
+        if (memo == null) memo = vars.lazyMemo();
+        if (memo.containsKey(v)) continue;
+        memo.put(v, new PendingValue(CompletableFuture.supplyAsync(() -> call(v), executor)));
+      }
+    }
+  }
+
+  /** true si alguna referencia parte de un valor diferido (hashearla para un ETag lo resolvería). */
+  static boolean anyLazy(Scope vars, Collection<VarPath> refs) {
+    for (VarPath p : refs) {
+      for (Object v : candidates(vars, p)) if (isLazy(v)) return true;
+    }
+    return false;
+  }
+
+  // valor del primer segmento en cada scope donde la cascada podría encontrarlo
+  private static Object[] candidates(Scope vars, VarPath p) {
+    String first = p.segments[0];
+    if (p.scope != VarPath.CASCADE) {
+      Map<String,Object> scoped = vars.ctxScope(p.scope);
+      return new Object[] { scoped == null ? null : scoped.get(first), vars.get(p.full[0]) };
+    }
+    MoplaContext ctx = vars.ctx();
+    if (ctx == null) return new Object[] { vars.get(first) };
+    return new Object[] { vars.get(first), ctx.req().get(first), ctx.session().get(first), ctx.app().get(first) };
+  }
+
+  private static Object call(Object v) {
+    try {
+      if (v instanceof Supplier<?> s) return s.get();
+      return ((Callable<?>) v).call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException("Error resolviendo valor diferido: " + e.getMessage(), e);
+    }
+  }
+
+  private static Object await(Future<?> f) {
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Render interrumpido esperando un valor diferido", e);
+    } catch (ExecutionException e) {
+      Throwable c = e.getCause();
+      if (c instanceof RuntimeException re) throw re;
+      if (c instanceof Error err) throw err;
+      throw new IllegalStateException("Error resolviendo valor diferido: " + c, c);
+    }
+  }
+
+  private static final Object NULL = new Object();
+
+  /** Supplier/Callable lanzado por prefetch y todavía no consumido. */
+  private static final class PendingValue {
+    final CompletableFuture<Object> future;
+    PendingValue(CompletableFuture<Object> future) { this.future = future; }
+  }
+}
@@ -0,0 +1,130 @@
+package com.ronaldbit.mopla;
+
+import java.util.*;
+
+/** Foto de {@link InMemoryMetrics}: estadísticas por plantilla y por filtro (tiempos en nanosegundos). */
+public final class MetricsSnapshot {
+  private final Map<String, TemplateStats> templates;
+  private final Map<String, Latency> filters;
+
+  MetricsSnapshot(Map<String, TemplateStats> templates, Map<String, Latency> filters) {
+    this.templates = Collections.unmodifiableMap(templates);
+    this.filters = Collections.unmodifiableMap(filters);
+  }
+
+  /** Plantilla → estadísticas (incluye las usadas solo como include o layout). */
+  public Map<String, TemplateStats> templates() { return templates; }
+  /** Filtro → latencia por aplicación. */
+  public Map<String, Latency> filters()         { return filters; }
+
+  /** Las {@code n} plantillas renderizadas con peor p99. */
+  public List<Map.Entry<String, TemplateStats>> slowest(int n) {
+    List<Map.Entry<String, TemplateStats>> out = new ArrayList<>();
+    for (Map.Entry<String, TemplateStats> e : templates.entrySet()) if (e.getValue().render.count > 0) out.add(e);
+    out.sort((a, b) -> Long.compare(b.getValue().render.p99, a.getValue().render.p99));
+    return out.subList(0, Math.min(n, out.size()));
+  }
+
+  /** Distribución de latencias (percentiles con error <= 12,5%). */
+  public static final class Latency {
+    private final long count, totalNanos, p50, p90, p99, p999, max;
+
+    Latency(long count, long totalNanos, long p50, long p90, long p99, long p999, long max) {
+      this.count = count; this.totalNanos = totalNanos;
+      this.p50 = p50; this.p90 = p90; this.p99 = p99; this.p999 = p999; this.max = max;
+    }
+
+    public long count()      { return count; }
+    public long totalNanos() { return totalNanos; }
+    public long meanNanos()  { return count == 0 ? 0 : totalNanos / count; }
+    public long p50()        { return p50; }
+    public long p90()        { return p90; }
+    public long p99()        { return p99; }
+    public long p999()       { return p999; }
+    public long max()        { return max; }
+
+    @Override public String toString() {
+      return "n=" + count + " mean=" + ms(meanNanos()) + " p50=" + ms(p50) + " p90=" + ms(p90)
+          + " p99=" + ms(p99) + " max=" + ms(max);
+    }
+
+    String toJson() {
+      return "{\"count\":" + count + ",\"totalNanos\":" + totalNanos + ",\"p50\":" + p50 + ",\"p90\":" + p90
+          + ",\"p99\":" + p99 + ",\"p999\":" + p999 + ",\"max\":" + max + "}";
+    }
+  }
+
+  public static final class TemplateStats {
+    private final Latency render, include, layout;
+    private final long outputTotal, outputMax, cacheHits, cacheMisses, cacheLoadNanos;
+
+    TemplateStats(Latency render, Latency include, Latency layout, long outputTotal, long outputMax,
+                  long cacheHits, long cacheMisses, long cacheLoadNanos) {
+      this.render = render; this.include = include; this.layout = layout;
+      this.outputTotal = outputTotal; this.outputMax = outputMax;
+      this.cacheHits = cacheHits; this.cacheMisses = cacheMisses; this.cacheLoadNanos = cacheLoadNanos;
+    }
+
+    /** Renders completos (llamadas a Mopla.render de esta plantilla). */
+    public Latency render()        { return render; }
+    /** Usos como @include (resolución + render). */
+    public Latency include()       { return include; }
+    /** Resolución de su cadena @extend. */
+    public Latency layout()        { return layout; }
+    /** Salida total y máxima de sus renders (bytes o chars, ver {@link MoplaMetrics#render}). */
+    public long outputTotal()      { return outputTotal; }
+    public long outputMax()        { return outputMax; }
+    public long averageOutput()    { return render.count == 0 ? 0 : outputTotal / render.count; }
+    public long cacheHits()        { return cacheHits; }
+    public long cacheMisses()      { return cacheMisses; }
+    public long cacheLoadNanos()   { return cacheLoadNanos; }
+
+    public double cacheHitRate() {
+      long total = cacheHits + cacheMisses;
+      return total == 0 ? 1.0 : (double) cacheHits / total;
+    }
+
+    @Override public String toString() {
+      StringBuilder sb = new StringBuilder();
+      if (render.count > 0) sb.append("render{").append(render).append("} avgOutput=").append(averageOutput()).append(' ');
+      if (include.count > 0) sb.append("include{").append(include).append("} ");
+      if (layout.count > 0) sb.append("layout{").append(layout).append("} ");
+      return sb.append("cache=").append(cacheHits).append('/').append(cacheHits + cacheMisses).toString();
+    }
+
+    String toJson() {
+      return "{\"render\":" + render.toJson() + ",\"include\":" + include.toJson() + ",\"layout\":" + layout.toJson()
+          + ",\"outputTotal\":" + outputTotal + ",\"outputMax\":" + outputMax
+          + ",\"cacheHits\":" + cacheHits + ",\"cacheMisses\":" + cacheMisses + ",\"cacheLoadNanos\":" + cacheLoadNanos + "}";
+    }
+  }
+
+  /** {"templates":{"home.html":{"render":{...},...}},"filters":{"number":{...}}} */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder(256 + 512 * templates.size());
+    sb.append("{\"templates\":{");
+    boolean first = true;
+    for (Map.Entry<String, TemplateStats> e : templates.entrySet()) {
+      if (!first) sb.append(','); first = false;
+      sb.append('"').append(TemplateUtils.jsonEscape(e.getKey())).append("\":").append(e.getValue().toJson());
+    }
+    sb.append("},\"filters\":{");
+    first = true;
+    for (Map.Entry<String, Latency> e : filters.entrySet()) {
+      if (!first) sb.append(','); first = false;
+      sb.append('"').append(TemplateUtils.jsonEscape(e.getKey())).append("\":").append(e.getValue().toJson());
+    }
+    return sb.append("}}").toString();
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, TemplateStats> e : templates.entrySet()) sb.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+    for (Map.Entry<String, Latency> e : filters.entrySet()) sb.append('|').append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+    return sb.toString();
+  }
+
+  private static String ms(long nanos) {
+    return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+  }
+}
@@ -1,39 +1,94 @@
 package com.ronaldbit.mopla;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.nio.file.*;
 import java.util.*;
 import java.util.function.Function;
 import java.util.concurrent.ConcurrentHashMap;
 
-import static com.ronaldbit.mopla.TemplateUtils.*;
-
 public class Mopla {
 
   /* ===== Config ===== */
   private final Path templatesRoot;
+  // disco, o recursos indexados si templatesRoot es "classpath:..." dentro de un jar
+  private final TemplateSource source;
+  // plantillas sueltas "classpath:x.html" (cacheadas igual que las de disco)
+  private final ClasspathSource resources;
   private boolean devMode = true;
   private boolean cacheEnabled = true;
+  // renders tras los que una plantilla pasa a bytecode generado (0 = solo intérprete)
+  private int jitThreshold = 0;
+  // límites del cache de plantillas (0 = sin límite)
+  private long cacheMaxWeight = TemplateCache.DEFAULT_MAX_WEIGHT;
+  private int cacheMaxEntries = 0;
+  // peso máximo estimado (bytes) de los fragmentos de @cache (0 = sin límite)
+  private long fragmentCacheMaxWeight = FragmentCache.DEFAULT_MAX_WEIGHT;
+  // executor para lanzar en paralelo los valores diferidos del modelo (null = al usarse)
+  private java.util.concurrent.Executor prefetchExecutor;
+  // @flush automático después del </head> (el navegador pide CSS/JS mientras se renderiza el cuerpo)
+  private boolean flushAfterHead = false;
+  // minifica el HTML literal de las plantillas al compilarlas
+  private boolean minify = false;
+  // listener de métricas de render (null = desactivado, sin costo)
+  private MoplaMetrics metrics;
+  // renders sintéticos por plantilla en warmUp()
+  private int warmUpRenders = 0;
 
   /* ===== Infra ===== */
   private final Map<String, Filter> filters = new ConcurrentHashMap<>();
+  // sube con cada register(): la salida puede cambiar con el mismo texto de plantilla (ETag)
+  private final java.util.concurrent.atomic.AtomicLong filterGeneration = new java.util.concurrent.atomic.AtomicLong();
   private final Map<String,Object> engineGlobals = new ConcurrentHashMap<>();
   private TemplateCache cache;
+  private FragmentCache fragments;
   private TemplateProcessor processor;
   // Hook extensible para assets (v0.4). Por defecto identidad.
   private Function<String,String> assetHook = s -> s;
+  private volatile WarmUpReport lastWarmUp;
 
+  /** {@code templatesPath} es un directorio o "classpath:templates" (includes y layouts se resuelven ahí). */
   public Mopla(String templatesPath) {
-    this.templatesRoot = Paths.get(templatesPath).toAbsolutePath().normalize();
+    ClassLoader cl = ClasspathSource.defaultLoader();
+    if (templatesPath.startsWith(ClasspathSource.PREFIX)) {
+      String res = ClasspathSource.resourceName(templatesPath);
+      Path dir = ClasspathSource.directory(cl, res);
+      if (dir == null) {
+        Path root = ClasspathSource.ROOT.resolve(res).normalize();
+        this.templatesRoot = root;
+        this.source = new ClasspathSource(cl, root, res, true);
+      } else {
+        this.templatesRoot = dir;
+        this.source = TemplateSource.FILES;
+      }
+    } else {
+      this.templatesRoot = Paths.get(templatesPath).toAbsolutePath().normalize();
+      this.source = TemplateSource.FILES;
+    }
+    this.resources = new ClasspathSource(cl, ClasspathSource.ROOT, "", false);
     DefaultFilters.registerAll(filters);
     rebuildInfra();
   }
 
   public Mopla setDevMode(boolean dev)          { this.devMode = dev; rebuildInfra(); return this; }
   public Mopla setCacheEnabled(boolean enabled) { this.cacheEnabled = enabled; rebuildInfra(); return this; }
-  public Mopla register(String name, Filter f)  { filters.put(name, f); return this; }
+  public Mopla register(String name, Filter f)  { filters.put(name, f); filterGeneration.incrementAndGet(); cache.clear(); return this; }
+  public Mopla setJitThreshold(int renders)     { this.jitThreshold = Math.max(0, renders); rebuildInfra(); return this; }
+  public Mopla setCacheMaxWeight(long bytes)    { this.cacheMaxWeight = Math.max(0, bytes); rebuildInfra(); return this; }
+  public Mopla setCacheMaxEntries(int entries)  { this.cacheMaxEntries = Math.max(0, entries); rebuildInfra(); return this; }
+  public Mopla setFragmentCacheMaxWeight(long bytes) { this.fragmentCacheMaxWeight = Math.max(0, bytes); rebuildInfra(); return this; }
+  /**
+   * Con un executor, cada render lanza de entrada (en paralelo) los Supplier/Callable del modelo que
+   * la plantilla referencia, en vez de resolverlos uno por uno al usarse. Null lo desactiva.
+   */
+  public Mopla setPrefetchExecutor(java.util.concurrent.Executor executor) { this.prefetchExecutor = executor; rebuildInfra(); return this; }
+  /** Métricas por plantilla (latencias, includes, layout, filtros, cache, salida); null las desactiva. Ver {@link InMemoryMetrics}. */
+  public Mopla setMetrics(MoplaMetrics metrics) { this.metrics = metrics; rebuildInfra(); return this; }
+  public MoplaMetrics metrics() { return metrics; }
+  /** Minificación HTML al compilar (ver {@link Builder#minify}); vacía el cache. */
+  public Mopla setMinify(boolean minify) { this.minify = minify; rebuildInfra(); return this; }
+  public Mopla setFlushAfterHead(boolean flush) { this.flushAfterHead = flush; rebuildInfra(); return this; }
+  public Mopla setWarmUpRenders(int renders)    { this.warmUpRenders = Math.max(0, renders); return this; }
 
   public Mopla setAssetHook(Function<String,String> hook) { this.assetHook = hook == null ? (s->s) : hook; rebuildInfra(); return this; }
 
@@ -41,8 +96,14 @@ public class Mopla {
   public Mopla removeGlobal(String k)           { engineGlobals.remove(k); return this; }
 
   private void rebuildInfra() {
-    this.cache = new TemplateCache(devMode, cacheEnabled);
-    this.processor = new TemplateProcessor(templatesRoot, cache, filters, devMode, assetHook);
+    if (this.cache != null) this.cache.close();
+    this.cache = new TemplateCache(templatesRoot, source.watchable(), devMode, cacheEnabled, cacheMaxWeight, cacheMaxEntries);
+    this.fragments = new FragmentCache(fragmentCacheMaxWeight);
+    // una plantilla que cambia descarta los fragmentos de @cache que salieron de ella (o la incluían)
+    FragmentCache f = this.fragments;
+    this.cache.onInvalidate(f::invalidateTemplates);
+    this.cache.metrics(metrics);
+    this.processor = new TemplateProcessor(templatesRoot, source, cache, fragments, filters, filterGeneration, devMode, assetHook, jitThreshold, prefetchExecutor, flushAfterHead, minify, metrics);
   }
 
   /** Builder fluent para v0.4 */
@@ -52,6 +113,16 @@ public class Mopla {
     private String templatesRoot = ".";
     private boolean devMode = true;
     private boolean cacheEnabled = true;
+    private int jitThreshold = 0;
+    private long cacheMaxWeight = TemplateCache.DEFAULT_MAX_WEIGHT;
+    private int cacheMaxEntries = 0;
+    private long fragmentCacheMaxWeight = FragmentCache.DEFAULT_MAX_WEIGHT;
+    private java.util.concurrent.Executor prefetchExecutor;
+    private boolean flushAfterHead = false;
+    private boolean minify = false;
+    private MoplaMetrics metrics;
+    private boolean warmUp = false;
+    private int warmUpRenders = 0;
     private final Map<String,Filter> registers = new HashMap<>();
     private final Map<String,Object> globals = new HashMap<>();
     private Function<String,String> assetHook = s->s;
@@ -59,6 +130,36 @@ public class Mopla {
     public Builder templatesRoot(String path) { this.templatesRoot = path; return this; }
     public Builder devMode(boolean dev) { this.devMode = dev; return this; }
     public Builder cacheEnabled(boolean en) { this.cacheEnabled = en; return this; }
+    /**
+     * Compila a bytecode (clase oculta) las plantillas cacheadas renderizadas {@code renders} veces:
+     * literales, @foreach, @if/@unless, @with y lecturas de variables van en código generado; el
+     * resto de directivas llama a su nodo. 0 lo desactiva.
+     */
+    public Builder jitThreshold(int renders) { this.jitThreshold = renders; return this; }
+    /** Peso máximo estimado (bytes) del cache de plantillas; 0 = sin límite. Por defecto 64 MiB. */
+    public Builder cacheMaxWeight(long bytes) { this.cacheMaxWeight = bytes; return this; }
+    /** Máximo de plantillas cacheadas; 0 = sin límite. */
+    public Builder cacheMaxEntries(int entries) { this.cacheMaxEntries = entries; return this; }
+    /** Peso máximo estimado (bytes) de la salida guardada por bloques @cache; 0 = sin límite. Por defecto 32 MiB. */
+    public Builder fragmentCacheMaxWeight(long bytes) { this.fragmentCacheMaxWeight = bytes; return this; }
+    /** Ver {@link Mopla#setPrefetchExecutor}. */
+    public Builder prefetchExecutor(java.util.concurrent.Executor executor) { this.prefetchExecutor = executor; return this; }
+    /**
+     * Inserta un @flush tras el {@code </head>} de cada plantilla: al renderizar a un OutputStream/Writer
+     * (p. ej. MoplaView) el head sale antes de que se renderice el cuerpo.
+     */
+    public Builder flushAfterHead(boolean flush) { this.flushAfterHead = flush; return this; }
+    /**
+     * Minifica el HTML al compilar cada plantilla (sin costo por render): quita la indentación entre
+     * tags, junta espacios y borra comentarios; respeta pre/textarea/script/style y los atributos.
+     */
+    public Builder minify(boolean minify) { this.minify = minify; return this; }
+    /** Ver {@link Mopla#setMetrics}. */
+    public Builder metrics(MoplaMetrics metrics) { this.metrics = metrics; return this; }
+    /** Compila todo templatesRoot al construir (ver {@link Mopla#warmUp()}); el reporte queda en {@link Mopla#lastWarmUp()}. */
+    public Builder warmUp(boolean enabled) { this.warmUp = enabled; return this; }
+    /** Renders sintéticos (variables vacías) por plantilla durante el warm-up, para calentar el JIT. */
+    public Builder warmUpRenders(int renders) { this.warmUpRenders = renders; return this; }
     public Builder register(String name, Filter f) { this.registers.put(name, f); return this; }
     public Builder putGlobal(String k, Object v) { this.globals.put(k, v); return this; }
     public Builder setAssetHook(Function<String,String> hook) { this.assetHook = hook == null ? (s->s) : hook; return this; }
@@ -67,9 +168,22 @@ public class Mopla {
       Mopla m = new Mopla(this.templatesRoot);
       m.setDevMode(this.devMode);
       m.setCacheEnabled(this.cacheEnabled);
+      m.setJitThreshold(this.jitThreshold);
+      m.setCacheMaxWeight(this.cacheMaxWeight);
+      m.setCacheMaxEntries(this.cacheMaxEntries);
+      m.setFragmentCacheMaxWeight(this.fragmentCacheMaxWeight);
+      m.setPrefetchExecutor(this.prefetchExecutor);
+      m.setFlushAfterHead(this.flushAfterHead);
+      m.setMinify(this.minify);
+      m.setMetrics(this.metrics);
       m.setAssetHook(this.assetHook);
       this.registers.forEach(m::register);
       this.globals.forEach(m::putGlobal);
+      m.setWarmUpRenders(this.warmUpRenders);
+      if (this.warmUp) {
+        try { m.warmUp(); }
+        catch (IOException e) { throw new java.io.UncheckedIOException(e); }
+      }
       return m;
     }
   }
@@ -78,64 +192,108 @@ public class Mopla {
 
   /** Render desde archivo con variables locales (compatibilidad). */
   public String render(String templateFile, Map<String,Object> vars) throws Exception {
-    Map<String,Object> merged = new HashMap<>(engineGlobals);
-    if (vars != null) merged.putAll(vars);
-    String content = readFile(templateFile);
-    content = processor.applyExtends(content, merged, new HashSet<>());
-    return processor.process(content, merged, new HashSet<>());
+    return processor.render(load(templateFile), scope(null, vars));
   }
 
   /** Render con contexto (app/session/req) + locales que pisan al contexto. */
   public String render(String templateFile, MoplaContext ctx, Map<String,Object> vars) throws Exception {
-    Map<String,Object> merged = mergedFromContext(ctx, vars);
-    String content = readFile(templateFile);
-    content = processor.applyExtends(content, merged, new HashSet<>());
-    return processor.process(content, merged, new HashSet<>());
+    return processor.render(load(templateFile), scope(ctx, vars));
+  }
+
+  /** Render en streaming: la salida se escribe en {@code out} a medida que se produce. */
+  public void render(String templateFile, Map<String,Object> vars, Appendable out) throws Exception {
+    processor.render(load(templateFile), scope(null, vars), RenderOutput.of(out));
+  }
+
+  public void render(String templateFile, MoplaContext ctx, Map<String,Object> vars, Appendable out) throws Exception {
+    processor.render(load(templateFile), scope(ctx, vars), RenderOutput.of(out));
+  }
+
+  /** Render en streaming a bytes UTF-8 (no cierra el stream). */
+  public void render(String templateFile, Map<String,Object> vars, OutputStream out) throws Exception {
+    processor.render(load(templateFile), scope(null, vars), RenderOutput.of(out));
+  }
+
+  public void render(String templateFile, MoplaContext ctx, Map<String,Object> vars, OutputStream out) throws Exception {
+    processor.render(load(templateFile), scope(ctx, vars), RenderOutput.of(out));
   }
 
   /** Render desde String (tests). */
   public String renderString(String templateText, Map<String,Object> vars) throws Exception {
-    Map<String,Object> merged = new HashMap<>(engineGlobals);
-    if (vars != null) merged.putAll(vars);
-    String content = templateText;
-    content = processor.applyExtends(content, merged, new HashSet<>());
-    return processor.process(content, merged, new HashSet<>());
+    return processor.render(processor.compile(null, templateText), scope(null, vars));
   }
 
   public String renderString(String templateText, MoplaContext ctx, Map<String,Object> vars) throws Exception {
-    Map<String,Object> merged = mergedFromContext(ctx, vars);
-    String content = templateText;
-    content = processor.applyExtends(content, merged, new HashSet<>());
-    return processor.process(content, merged, new HashSet<>());
+    return processor.render(processor.compile(null, templateText), scope(ctx, vars));
   }
 
+  /**
+   * Compila en paralelo todas las plantillas de templatesRoot (disco o classpath) dejándolas en el
+   * cache, verifica que cada @extend/@include exista y hace los renders sintéticos configurados.
+   * Los errores de sintaxis se reportan (no se lanzan), para que un readiness probe decida.
+   */
+  public WarmUpReport warmUp() throws IOException { return warmUp(warmUpRenders); }
+
+  public WarmUpReport warmUp(int syntheticRenders) throws IOException {
+    WarmUpReport r = WarmUp.run(processor, () -> scope(null, Map.of()), Math.max(0, syntheticRenders));
+    lastWarmUp = r;
+    return r;
+  }
+
+  /** Último reporte de warm-up (null si no se ejecutó). */
+  public WarmUpReport lastWarmUp() { return lastWarmUp; }
+
+  /** Hits, misses, cargas (y su tiempo), desalojos y ocupación del cache de plantillas. */
+  public CacheStats cacheStats() { return cache.stats(); }
+
+  /* ===== ETag ===== */
+
+  /**
+   * ETag (débil) de lo que produciría {@code render(templateFile, ctx, vars)}, calculado sin renderizar:
+   * versión de la plantilla, de sus layouts e includes y un hash de los valores que referencian.
+   * null si no se puede derivar (valores diferidos, beans, streams): hay que renderizar.
+   * Supone filtros deterministas (los integrados lo son).
+   */
+  public String etag(String templateFile, MoplaContext ctx, Map<String,Object> vars) throws Exception {
+    return processor.etag(load(templateFile), scope(ctx, vars));
+  }
+
+  /** true si la salida de la plantilla (con sus layouts e includes) no depende del modelo. */
+  public boolean isStatic(String templateFile) throws IOException {
+    return processor.etagPlan(load(templateFile)).isStatic();
+  }
+
+  /* ===== Fragmentos @cache ===== */
+
+  /** Descarta el fragmento con esa key exacta (ya interpolada, p. ej. "menu-es"). */
+  public Mopla invalidateFragment(String key)            { fragments.invalidate(key); return this; }
+  /** Descarta todos los fragmentos cuya key empieza con {@code prefix} (p. ej. "menu-"). */
+  public Mopla invalidateFragments(String prefix)        { fragments.invalidatePrefix(prefix); return this; }
+  public Mopla clearFragments()                          { fragments.clear(); return this; }
+  /** Hits/misses de @cache; loads = renders del bloque y loadNanos su tiempo total. */
+  public CacheStats fragmentStats()                      { return fragments.stats(); }
+
+  /** Tamaño de salida (chars) aprendido por plantilla cacheada; dimensiona el buffer de cada render. */
+  public Map<String,Integer> outputSizeHints() { return cache.sizeHints(); }
+
+  /** Detiene el watcher de plantillas de devMode (hilo daemon); útil al redeployar en caliente. */
+  public void close() { cache.close(); }
+
   /* ===== IO ===== */
 
-  private String readFile(String file) throws IOException {
-    // Soporte para classpath:resource (ej. classpath:templates/home.html)
-    if (file != null && file.startsWith("classpath:")) {
-      String res = file.substring("classpath:".length());
-      InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(res.startsWith("/") ? res.substring(1) : res);
-      if (in == null) return "";
-      try (in) { return new String(in.readAllBytes(), StandardCharsets.UTF_8); }
+  private CompiledTemplate load(String file) throws IOException {
+    // Soporte para classpath:resource (ej. classpath:templates/home.html); sus includes van contra templatesRoot
+    if (file != null && file.startsWith(ClasspathSource.PREFIX)) {
+      CompiledTemplate t = processor.findResource(file, resources);
+      return t != null ? t : processor.compile(file, "");
     }
-    Path p = templatesRoot.resolve(file).normalize();
-    if (!p.startsWith(templatesRoot)) throw new SecurityException("Archivo fuera de templates: " + file);
-    return cache.readFileCached(p);
-  }
-
-  /* ===== Merge de contexto ===== */
-
-  private Map<String,Object> mergedFromContext(MoplaContext ctx, Map<String,Object> locals) {
-    Map<String,Object> merged = new HashMap<>();
-    // prefijos que habilitan @var(app.x), @var(session.u), @var(req.csrf)
-    ctx.app().forEach((k,v)-> merged.put("app."+k, v));
-    ctx.session().forEach((k,v)-> merged.put("session."+k, v));
-    ctx.req().forEach((k,v)-> merged.put("req."+k, v));
-    // globals del engine
-    merged.putAll(engineGlobals);
-    // locales pisan todo
-    if (locals != null) merged.putAll(locals);
-    return merged;
+    return processor.load(processor.resolve(file, "Archivo"));
+  }
+
+  /* ===== Scope raíz ===== */
+
+  // enlaza (sin copiar) contexto app/session/req, globals del engine y locales que pisan a los globals
+  private Scope scope(MoplaContext ctx, Map<String,Object> locals) {
+    return Scope.root(ctx, engineGlobals, locals);
   }
 }
@@ -59,10 +59,12 @@ public final class MoplaConfig {
     boolean dev = Boolean.parseBoolean(p.getProperty("mopla.dev-mode", "true"));
     boolean cache = Boolean.parseBoolean(p.getProperty("mopla.cache-enabled", "true"));
     String assetPrefix = p.getProperty("mopla.asset-prefix", "");
+    boolean minify = Boolean.parseBoolean(p.getProperty("mopla.minify", "false"));
     return Mopla.builder()
         .templatesRoot(root)
         .devMode(dev)
         .cacheEnabled(cache)
+        .minify(minify)
         .setAssetHook(path -> assetPrefix + path)
         .build();
   }
@@ -102,6 +104,7 @@ public final class MoplaConfig {
     p.setProperty("mopla.dev-mode", map.getOrDefault("mopla.dev-mode", map.getOrDefault("dev-mode", "true")));
     p.setProperty("mopla.cache-enabled", map.getOrDefault("mopla.cache-enabled", map.getOrDefault("cache-enabled", "true")));
     p.setProperty("mopla.asset-prefix", map.getOrDefault("mopla.asset-prefix", map.getOrDefault("asset-prefix", "")));
+    p.setProperty("mopla.minify", map.getOrDefault("mopla.minify", map.getOrDefault("minify", "false")));
     return fromProperties(p);
   }
 
@@ -110,10 +113,12 @@ public final class MoplaConfig {
     boolean dev = Boolean.parseBoolean(env.getOrDefault("MOPLA_DEV_MODE", env.getOrDefault("mopla.dev-mode", "true")));
     boolean cache = Boolean.parseBoolean(env.getOrDefault("MOPLA_CACHE_ENABLED", env.getOrDefault("mopla.cache-enabled", "true")));
     String assetPrefix = env.getOrDefault("MOPLA_ASSET_PREFIX", env.getOrDefault("mopla.asset-prefix", ""));
+    boolean minify = Boolean.parseBoolean(env.getOrDefault("MOPLA_MINIFY", env.getOrDefault("mopla.minify", "false")));
     return Mopla.builder()
         .templatesRoot(root)
         .devMode(dev)
         .cacheEnabled(cache)
+        .minify(minify)
         .setAssetHook(path -> assetPrefix + path)
         .build();
   }
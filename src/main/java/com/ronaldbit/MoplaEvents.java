@@ -0,0 +1,83 @@
+package com.ronaldbit.mopla;
+
+import jdk.jfr.*;
+
+/**
+ * Eventos de JDK Flight Recorder (categoría "Mopla"). Cada sitio pregunta antes {@link #enabled} por
+ * el tipo del evento (lectura de un campo) y solo crea la instancia si hay una grabación que lo pide:
+ * sin grabación los caminos de render no asignan nada.
+ *
+ * <pre>
+ * java -XX:StartFlightRecording=filename=app.jfr ...
+ * jfr print --categories Mopla app.jfr
+ * </pre>
+ */
+final class MoplaEvents {
+  private MoplaEvents() {}
+
+  // null si la JVM no trae JFR
+  static final EventType RENDER        = type(Render.class);
+  static final EventType INCLUDE       = type(Include.class);
+  static final EventType LAYOUT        = type(Layout.class);
+  static final EventType FILTER        = type(Filter.class);
+  static final EventType TEMPLATE_LOAD = type(TemplateLoad.class);
+
+  /** Hay una grabación en curso con este evento activado. */
+  static boolean enabled(EventType type) { return type != null && type.isEnabled(); }
+
+  private static EventType type(Class<? extends Event> c) {
+    try { return EventType.getEventType(c); }
+    catch (RuntimeException | Error e) { return null; }
+  }
+
+  @Name("com.ronaldbit.mopla.Render")
+  @Label("Mopla Render")
+  @Category("Mopla")
+  @Description("Render completo de una plantilla (layout e includes incluidos)")
+  static final class Render extends Event {
+    @Label("Template") String template;
+    @Label("Output Size") @Description("Bytes UTF-8 al renderizar a un OutputStream; chars en los demás casos")
+    long outputSize;
+  }
+
+  @Name("com.ronaldbit.mopla.Include")
+  @Label("Mopla Include")
+  @Category("Mopla")
+  @StackTrace(false)
+  @Description("Un @include: resolución (cache o carga) más su render")
+  static final class Include extends Event {
+    @Label("Template") String template;
+  }
+
+  @Name("com.ronaldbit.mopla.Layout")
+  @Label("Mopla Layout")
+  @Category("Mopla")
+  @Description("Render de una plantilla con @extend: resolución de la cadena, secciones y layout")
+  @StackTrace(false)
+  static final class Layout extends Event {
+    @Label("Template") String template;
+    @Label("Layout") String layout;
+    @Label("Chain Depth") int depth;
+    @Label("Chain Resolved") @Description("La cadena @extend se resolvió en este render (primera vez o layout cambiado)")
+    boolean resolved;
+  }
+
+  @Name("com.ronaldbit.mopla.Filter")
+  @Label("Mopla Filter")
+  @Category("Mopla")
+  @StackTrace(false)
+  static final class Filter extends Event {
+    @Label("Filter") String filter;
+  }
+
+  @Name("com.ronaldbit.mopla.TemplateLoad")
+  @Label("Mopla Template Lookup")
+  @Category("Mopla")
+  @Description("Búsqueda de una plantilla en el cache; en un miss incluye lectura y compilación")
+  @StackTrace(false)
+  static final class TemplateLoad extends Event {
+    @Label("Template") String template;
+    @Label("Cache Hit") boolean cacheHit;
+    @Label("Found") boolean found;
+  }
+}
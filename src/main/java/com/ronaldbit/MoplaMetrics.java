@@ -0,0 +1,33 @@
+package com.ronaldbit.mopla;
+
+/**
+ * Listener de métricas de render ({@link Mopla#setMetrics}). Todos los métodos son opcionales y se
+ * llaman en el hilo del render: una implementación debe ser thread-safe y barata (contadores, no I/O).
+ * Sin listener configurado no se toma ningún tiempo. {@link InMemoryMetrics} es la implementación
+ * incluida.
+ *
+ * Los nombres de plantilla son relativos a templatesRoot ("partials/nav.html"); un renderString
+ * se reporta como {@code "<string>"}.
+ */
+public interface MoplaMetrics {
+  /**
+   * Render completo de una plantilla (con su layout e includes). {@code outputSize} son bytes UTF-8
+   * al renderizar a un OutputStream y chars en los demás casos.
+   */
+  default void render(String template, long nanos, long outputSize) {}
+
+  /** Un @include: resolución (cache o carga) más su render. */
+  default void include(String template, long nanos) {}
+
+  /** Resolución de la cadena @extend de {@code template} (en producción, solo la primera vez cuesta). */
+  default void layout(String template, long nanos) {}
+
+  /** Una aplicación de un filtro de @var (p. ej. "number", "date"). */
+  default void filter(String filter, long nanos) {}
+
+  /** La plantilla estaba compilada en el cache. */
+  default void cacheHit(String template) {}
+
+  /** No estaba: lectura + compilación en {@code loadNanos}. */
+  default void cacheMiss(String template, long loadNanos) {}
+}
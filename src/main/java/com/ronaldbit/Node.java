@@ -0,0 +1,15 @@
+package com.ronaldbit.mopla;
+
+/** Nodo inmutable del árbol compilado de una plantilla. */
+interface Node {
+  void render(RenderState st, Scope vars, RenderOutput out) throws Exception;
+
+  /** Copia del nodo con sus bloques internos transformados (usado por {@link BytecodeCompiler}). */
+  default Node withBodies(BodyMapper f) throws Exception { return this; }
+
+  interface BodyMapper { Node[] apply(Node[] body) throws Exception; }
+
+  static void renderAll(Node[] nodes, RenderState st, Scope vars, RenderOutput out) throws Exception {
+    for (Node n : nodes) n.render(st, vars, out);
+  }
+}
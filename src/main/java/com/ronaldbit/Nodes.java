@@ -0,0 +1,266 @@
+package com.ronaldbit.mopla;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Tipos de nodo producidos por {@link TemplateParser}. */
+final class Nodes {
+  private Nodes() {}
+
+  /** Texto literal; se guarda también en UTF-8 para la salida por bytes. */
+  static final class Text implements Node {
+    final String text;
+    final byte[] utf8;
+    Text(String text) { this.text = text; this.utf8 = text.getBytes(StandardCharsets.UTF_8); }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception { out.appendLiteral(text, utf8); }
+  }
+
+  /** @var(name|filtros) — escapado HTML. */
+  static final class Var implements Node {
+    final VarPath path;
+    final String pipe;           // texto del pipe tal cual (null si no hay); se re-vincula al cargar precompilado
+    final FilterChain filters;
+    Var(VarPath path, String pipe, FilterChain filters) { this.path = path; this.pipe = pipe; this.filters = filters; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      write(st, out, TemplateUtils.resolveVar(vars, path), filters);
+    }
+
+    /** Filtros (si hay) y salida escapada de un valor ya resuelto; también la usa el código generado. */
+    static void write(RenderState st, RenderOutput out, Object val, FilterChain filters) throws Exception {
+      if (filters != null) {
+        MoplaMetrics m = st.metrics;
+        val = m == null ? filters.apply(val) : filters.apply(val, m);
+      }
+      if (val instanceof SafeHtml h) out.appendLiteral(h.html, h.utf8);
+      else if (TemplateUtils.isPlainScalar(val)) out.append(val.toString());
+      else out.appendEscaped(Objects.toString(val, ""));
+    }
+  }
+
+  /** @raw(name) — sin escape. */
+  static final class Raw implements Node {
+    final VarPath path;
+    Raw(VarPath path) { this.path = path; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      write(out, TemplateUtils.resolveVar(vars, path));
+    }
+
+    static void write(RenderOutput out, Object val) throws Exception {
+      if (val instanceof SafeHtml h) out.appendLiteral(h.html, h.utf8);
+      else out.append(Objects.toString(val, ""));
+    }
+  }
+
+  /**
+   * @yield("x") — dentro de un layout se reemplaza por un {@link Slot} al resolver la cadena @extend;
+   * renderizada tal cual (plantilla sin hijo) es una variable sin escape.
+   */
+  static final class Yield implements Node {
+    final String name;
+    final VarPath path;
+    Yield(String name) { this.name = name; this.path = VarPath.of(name); }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      out.append(Objects.toString(TemplateUtils.resolveVar(vars, path), ""));
+    }
+  }
+
+  /** Sección de la cadena @extend en curso: ya renderizada, o (layout con @flush) se renderiza aquí. */
+  static final class Slot implements Node {
+    final int index;
+    Slot(int index) { this.index = index; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      if (st.slotBodies != null) Node.renderAll(st.slotBodies[index], st, st.slotScope, out);
+      else out.append(st.slotValues[index]);
+    }
+  }
+
+  /** @flush — envía al cliente lo renderizado hasta aquí (no-op al renderizar a String). */
+  static final class Flush implements Node {
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception { out.flush(); }
+  }
+
+  /** @section("x") ... @endsection — sin @extend se renderiza en línea. */
+  static final class Section implements Node {
+    final String name;
+    final Node[] body;
+    Section(String name, Node[] body) { this.name = name; this.body = body; }
+    @Override public Node withBodies(BodyMapper f) throws Exception { return new Section(name, f.apply(body)); }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      Node.renderAll(body, st, vars, out);
+    }
+  }
+
+  /** @include("file") y @include("file", k:"v"). */
+  static final class Include implements Node {
+    final String file;
+    final Map<String,Object> locals;
+    Include(String file, Map<String,Object> locals) { this.file = file; this.locals = locals; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      st.processor.renderInclude(file, locals == null ? vars : vars.child(locals), st, out);
+    }
+  }
+
+  /** @foreach(item in list) ... @endforeach */
+  static final class Foreach implements Node {
+    final String itemName;
+    final String indexName;
+    final VarPath list;
+    final Node[] body;
+    Foreach(String itemName, VarPath list, Node[] body) {
+      this.itemName = itemName; this.indexName = itemName + "_index";
+      this.list = list; this.body = body;
+    }
+    @Override public Node withBodies(BodyMapper f) throws Exception { return new Foreach(itemName, list, f.apply(body)); }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      Object listObj = TemplateUtils.resolveVar(vars, list);
+      Iterator<?> it = TemplateUtils.iterator(listObj);
+      if (it == null) return;
+      AutoCloseable owned = owned(listObj);
+      try {
+        // un solo frame por bucle, reutilizado (un @set del cuerpo no pasa a la siguiente iteración);
+        // cada iteración va directo a la salida, sin retener las anteriores
+        Scope loop = vars.child();
+        int index = 0;
+        while (it.hasNext()) {
+          Object item = it.next();
+          loop.clear();
+          loop.set(itemName, item);
+          loop.set(indexName, index++);
+          Node.renderAll(body, st, loop, out);
+        }
+      } finally {
+        if (owned != null) owned.close();
+      }
+    }
+
+    /** Stream e Iterator son de un solo uso: se cierran al terminar el bucle (o si el cuerpo falla). */
+    static AutoCloseable owned(Object listObj) {
+      return listObj instanceof java.util.stream.BaseStream<?,?> s ? s
+          : listObj instanceof AutoCloseable c && listObj instanceof Iterator<?> ? c : null;
+    }
+  }
+
+  /** @if(cond) ... [@else ...] @endif y @unless(cond) ... @endunless (negate). */
+  static final class If implements Node {
+    final VarPath cond;
+    final boolean negate;
+    final Node[] thenB;
+    final Node[] elseB;
+    If(VarPath cond, boolean negate, Node[] thenB, Node[] elseB) {
+      this.cond = cond; this.negate = negate; this.thenB = thenB; this.elseB = elseB;
+    }
+    @Override public Node withBodies(BodyMapper f) throws Exception {
+      return new If(cond, negate, f.apply(thenB), elseB == null ? null : f.apply(elseB));
+    }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      boolean ok = TemplateUtils.truthy(TemplateUtils.resolveVar(vars, cond)) != negate;
+      Node[] b = ok ? thenB : elseB;
+      if (b != null) Node.renderAll(b, st, vars, out);
+    }
+  }
+
+  /** @with(k:"v":x:"y") ... @endwith */
+  static final class With implements Node {
+    final Map<String,Object> locals;
+    final Node[] body;
+    With(Map<String,Object> locals, Node[] body) { this.locals = locals; this.body = body; }
+    @Override public Node withBodies(BodyMapper f) throws Exception { return new With(locals, f.apply(body)); }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      Node.renderAll(body, st, vars.child(locals), out); // locals pisan
+    }
+  }
+
+  /** @cache("menu-{session.locale}", ttl:"60s") ... @endcache — salida del bloque compartida entre renders. */
+  static final class Cache implements Node {
+    final String key;       // tal cual en la plantilla
+    final long ttlMillis;   // <= 0: sin vencimiento
+    final Node[] body;
+    // plantilla que lo contiene (nombre relativo a templatesRoot); null en renderString
+    final String owner;
+    // key partida: literal, variable, literal, ... (variables entre llaves)
+    private final String[] literals;
+    final VarPath[] keyVars;
+
+    Cache(String key, long ttlMillis, Node[] body, String owner) {
+      this.key = key; this.ttlMillis = ttlMillis; this.body = body;
+      this.owner = owner == null ? null : owner.replace('\\', '/');
+      List<String> lit = new ArrayList<>();
+      List<VarPath> vs = new ArrayList<>();
+      int pos = 0;
+      while (true) {
+        int open = key.indexOf('{', pos);
+        int close = open < 0 ? -1 : key.indexOf('}', open + 1);
+        if (close < 0) { lit.add(key.substring(pos)); break; }
+        lit.add(key.substring(pos, open));
+        vs.add(VarPath.of(key.substring(open + 1, close).trim()));
+        pos = close + 1;
+      }
+      this.literals = lit.toArray(new String[0]);
+      this.keyVars = vs.toArray(new VarPath[0]);
+    }
+
+    @Override public Node withBodies(BodyMapper f) throws Exception { return new Cache(key, ttlMillis, f.apply(body), owner); }
+
+    String resolveKey(Scope scope) {
+      if (keyVars.length == 0) return literals[0];
+      StringBuilder sb = new StringBuilder(key.length() + 16);
+      for (int i=0;i<keyVars.length;i++) {
+        sb.append(literals[i]).append(Objects.toString(TemplateUtils.resolveVar(scope, keyVars[i]), ""));
+      }
+      return sb.append(literals[keyVars.length]).toString();
+    }
+
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      // un render sintético (scope vacío) no deja su salida a los requests reales
+      if (st.synthetic) { Node.renderAll(body, st, vars, out); return; }
+      FragmentCache fc = st.processor.fragments();
+      String k = resolveKey(vars);
+      FragmentCache.Fragment f = fc.get(k);
+      java.util.Set<String> outer = st.fragmentSources;
+      if (f == null) {
+        // plantillas de las que sale el fragmento: al invalidarse alguna, se descarta
+        java.util.Set<String> sources = new HashSet<>();
+        if (owner != null) sources.add(owner);
+        st.fragmentSources = sources;
+        long t0 = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        try {
+          Node.renderAll(body, st, vars, RenderOutput.of(sb));
+        } finally {
+          st.fragmentSources = outer;
+        }
+        f = fc.put(k, sb.toString(), ttlMillis, System.nanoTime() - t0, sources);
+      }
+      if (outer != null) outer.addAll(f.sources);
+      out.appendLiteral(f.text, f.utf8);
+    }
+  }
+
+  /** @set("k","v") en el scope actual. */
+  static final class Set implements Node {
+    final String key;
+    final String value;
+    Set(String key, String value) { this.key = key; this.value = value; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception { vars.set(key, value); }
+  }
+
+  /** @asset("path") -> assetHook(path) */
+  static final class Asset implements Node {
+    final String path;
+    Asset(String path) { this.path = path; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      out.append(st.processor.asset(path));
+    }
+  }
+
+  /** @dump(x) — solo en devMode. */
+  static final class Dump implements Node {
+    final VarPath path;
+    Dump(VarPath path) { this.path = path; }
+    public void render(RenderState st, Scope vars, RenderOutput out) throws Exception {
+      if (!st.processor.devMode()) return;
+      Object val = TemplateUtils.resolveVar(vars, path);
+      out.append("<pre>" + TemplateUtils.htmlEscape(TemplateUtils.dump(val)) + "</pre>");
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package com.ronaldbit.mopla;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Forma binaria de un {@link CompiledTemplate} (archivo ".mplc" junto a la plantilla), generada en
+ * build por {@link TemplatePrecompiler}. Guarda el árbol de nodos ya parseado; los pipes de filtros
+ * se guardan como texto y se vinculan al cargar contra los filtros registrados en ese momento.
+ *
+ * Solo se usa en producción y sin leer la fuente: la cabecera lleva el tamaño en bytes de la
+ * plantilla (además de su versión y largo, que de otro modo saldrían del texto) y se compara con el
+ * que informa el {@link TemplateSource}. Si difiere, o el formato es de otra versión, se parsea como
+ * siempre. El índice {@link #INDEX} lista las plantillas precompiladas para no buscar un ".mplc"
+ * por cada miss.
+ */
+final class PrecompiledTemplate {
+  private PrecompiledTemplate() {}
+
+  static final String EXTENSION = ".mplc";
+  /** Nombres (relativos, con '/') de las plantillas precompiladas, uno por línea; oculto para el listado. */
+  static final String INDEX = ".mplc-index";
+  private static final int MAGIC = 0x4D504C43; // "MPLC"
+  // subir al cambiar nodos o su codificación
+  private static final int VERSION = 2;
+
+  private static final byte TEXT = 1, VAR = 2, RAW = 3, YIELD = 4, SECTION = 5, INCLUDE = 6,
+      FOREACH = 7, IF = 8, WITH = 9, SET = 10, ASSET = 11, DUMP = 12, CACHE = 13,
+      FLUSH = 14;
+
+  /* ========== Escritura (build) ========== */
+
+  static byte[] write(CompiledTemplate t, String source) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(256, source.length()));
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(source.getBytes(StandardCharsets.UTF_8).length);
+    out.writeInt(source.length());
+    out.writeLong(ETags.hash(source));
+    writeString(out, t.extendsFile);
+    writeBody(out, t.nodes);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void writeBody(DataOutputStream out, Node[] body) throws IOException {
+    out.writeInt(body.length);
+    for (Node n : body) writeNode(out, n);
+  }
+
+  private static void writeNode(DataOutputStream out, Node n) throws IOException {
+    if (n instanceof Nodes.Text x) {
+      out.writeByte(TEXT);
+      out.writeInt(x.utf8.length);
+      out.write(x.utf8);
+    } else if (n instanceof Nodes.Var x) {
+      out.writeByte(VAR); writeString(out, x.path.token); writeString(out, x.pipe);
+    } else if (n instanceof Nodes.Raw x) {
+      out.writeByte(RAW); writeString(out, x.path.token);
+    } else if (n instanceof Nodes.Yield x) {
+      out.writeByte(YIELD); writeString(out, x.name);
+    } else if (n instanceof Nodes.Section x) {
+      out.writeByte(SECTION); writeString(out, x.name); writeBody(out, x.body);
+    } else if (n instanceof Nodes.Include x) {
+      out.writeByte(INCLUDE); writeString(out, x.file); writeMap(out, x.locals);
+    } else if (n instanceof Nodes.Foreach x) {
+      out.writeByte(FOREACH); writeString(out, x.itemName); writeString(out, x.list.token); writeBody(out, x.body);
+    } else if (n instanceof Nodes.If x) {
+      out.writeByte(IF); writeString(out, x.cond.token); out.writeBoolean(x.negate);
+      writeBody(out, x.thenB);
+      out.writeBoolean(x.elseB != null);
+      if (x.elseB != null) writeBody(out, x.elseB);
+    } else if (n instanceof Nodes.With x) {
+      out.writeByte(WITH); writeMap(out, x.locals); writeBody(out, x.body);
+    } else if (n instanceof Nodes.Cache x) {
+      out.writeByte(CACHE); writeString(out, x.key); out.writeLong(x.ttlMillis); writeBody(out, x.body);
+    } else if (n instanceof Nodes.Set x) {
+      out.writeByte(SET); writeString(out, x.key); writeString(out, x.value);
+    } else if (n instanceof Nodes.Asset x) {
+      out.writeByte(ASSET); writeString(out, x.path);
+    } else if (n instanceof Nodes.Dump x) {
+      out.writeByte(DUMP); writeString(out, x.path.token);
+    } else if (n instanceof Nodes.Flush) {
+      out.writeByte(FLUSH);
+    } else {
+      throw new IllegalStateException("Nodo sin forma precompilada: " + n.getClass().getName());
+    }
+  }
+
+  // writeUTF no sirve: corta en 64 KB
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) { out.writeInt(-1); return; }
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(b.length);
+    out.write(b);
+  }
+
+  private static void writeMap(DataOutputStream out, Map<String,Object> m) throws IOException {
+    if (m == null) { out.writeInt(-1); return; }
+    out.writeInt(m.size());
+    for (Map.Entry<String,Object> e : m.entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, String.valueOf(e.getValue()));
+    }
+  }
+
+  /* ========== Lectura (runtime) ========== */
+
+  /** Plantilla cargada sin su texto: lo que el cache y el procesador sacarían de él. */
+  static final class Loaded {
+    final CompiledTemplate template;
+    final int sourceLength; // en chars, para el peso en el cache
+
+    Loaded(CompiledTemplate template, int sourceLength) { this.template = template; this.sourceLength = sourceLength; }
+  }
+
+  /**
+   * Plantilla reconstruida (con su versión ya puesta), o null si se generó para una fuente de otro
+   * tamaño que {@code sourceSize} o es de otro formato.
+   */
+  static Loaded read(byte[] data, long sourceSize, String name, Map<String, Filter> filters) {
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+      if (in.readLong() != sourceSize) return null;
+      int length = in.readInt();
+      long version = in.readLong();
+      Reader r = new Reader(in, name, filters);
+      String extendsFile = r.string();
+      Node[] nodes = r.body();
+      CompiledTemplate t = new CompiledTemplate(name, nodes, extendsFile, r.sections);
+      t.version = version;
+      return new Loaded(t, length);
+    } catch (IOException | RuntimeException e) {
+      return null; // corrupto o incompleto: se parsea la fuente
+    }
+  }
+
+  /** Nombres del {@link #INDEX}; vacío si {@code data} es null. */
+  static Set<String> readIndex(byte[] data) {
+    if (data == null) return Set.of();
+    Set<String> names = new HashSet<>();
+    for (String line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+      if (!line.isBlank()) names.add(line.strip());
+    }
+    return names;
+  }
+
+  private static final class Reader {
+    final DataInputStream in;
+    final String name;
+    final Map<String, Filter> filters;
+    // mismo orden que el parser: cada sección se registra al terminar su cuerpo
+    final Map<String, Node[]> sections = new LinkedHashMap<>();
+
+    Reader(DataInputStream in, String name, Map<String, Filter> filters) { this.in = in; this.name = name; this.filters = filters; }
+
+    Node[] body() throws IOException {
+      int n = in.readInt();
+      Node[] out = new Node[n];
+      for (int i=0;i<n;i++) out[i] = node();
+      return out;
+    }
+
+    Node node() throws IOException {
+      byte tag = in.readByte();
+      switch (tag) {
+        case TEXT: {
+          byte[] b = new byte[in.readInt()];
+          in.readFully(b);
+          return new Nodes.Text(new String(b, StandardCharsets.UTF_8));
+        }
+        case VAR: {
+          String token = string();
+          String pipe = string();
+          return new Nodes.Var(VarPath.of(token), pipe, pipe == null ? null : FilterChain.compile(pipe, filters));
+        }
+        case RAW:     return new Nodes.Raw(VarPath.of(string()));
+        case YIELD:   return new Nodes.Yield(string());
+        case SECTION: {
+          String sec = string();
+          Node[] body = body();
+          sections.put(sec, body);
+          return new Nodes.Section(sec, body);
+        }
+        case INCLUDE: {
+          String file = string();
+          return new Nodes.Include(file, map());
+        }
+        case FOREACH: {
+          String item = string();
+          String list = string();
+          return new Nodes.Foreach(item, VarPath.of(list), body());
+        }
+        case IF: {
+          String cond = string();
+          boolean negate = in.readBoolean();
+          Node[] thenB = body();
+          Node[] elseB = in.readBoolean() ? body() : null;
+          return new Nodes.If(VarPath.of(cond), negate, thenB, elseB);
+        }
+        case WITH: {
+          Map<String,Object> locals = map();
+          return new Nodes.With(locals, body());
+        }
+        case CACHE: {
+          String key = string();
+          long ttl = in.readLong();
+          return new Nodes.Cache(key, ttl, body(), name);
+        }
+        case SET: {
+          String k = string();
+          return new Nodes.Set(k, string());
+        }
+        case ASSET: return new Nodes.Asset(string());
+        case DUMP:  return new Nodes.Dump(VarPath.of(string()));
+        case FLUSH: return new Nodes.Flush();
+        default: throw new IOException("Nodo desconocido: " + tag);
+      }
+    }
+
+    String string() throws IOException {
+      int len = in.readInt();
+      if (len < 0) return null;
+      byte[] b = new byte[len];
+      in.readFully(b);
+      return new String(b, StandardCharsets.UTF_8);
+    }
+
+    Map<String,Object> map() throws IOException {
+      int n = in.readInt();
+      if (n < 0) return null;
+      Map<String,Object> m = new LinkedHashMap<>();
+      for (int i=0;i<n;i++) {
+        String k = string();
+        m.put(k, string());
+      }
+      return m;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.ronaldbit.mopla;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accesores de propiedades por (Class, nombre) resueltos una sola vez con MethodHandles.
+ * Cachea también los fallos. {@link ClassValue} ata la cache a la propia clase, así que no
+ * retiene class loaders (redeploys, devtools).
+ */
+final class PropertyAccessors {
+  private PropertyAccessors() {}
+
+  private static final MethodType GENERIC = MethodType.genericMethodType(1);
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+  /** Accesor resuelto; {@link #MISSING} si la clase no tiene la propiedad. */
+  static final class Accessor {
+    private final MethodHandle mh; // (Object)Object
+    Accessor(MethodHandle mh) { this.mh = mh; }
+
+    Object get(Object bean) {
+      try { return mh.invokeExact(bean); }
+      catch (Throwable e) { return null; }
+    }
+  }
+
+  static final Accessor MISSING =
+      new Accessor(MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object.class));
+
+  private static final ClassValue<ConcurrentHashMap<String, Accessor>> CACHE = new ClassValue<>() {
+    @Override protected ConcurrentHashMap<String, Accessor> computeValue(Class<?> type) { return new ConcurrentHashMap<>(); }
+  };
+
+  static Object get(Object bean, String prop) {
+    return accessor(bean.getClass(), prop).get(bean);
+  }
+
+  /** Accesor cacheado de {@code prop} en {@code c} (lo guarda también {@link VarSite} en cada sitio). */
+  static Accessor accessor(Class<?> c, String prop) {
+    ConcurrentHashMap<String, Accessor> byName = CACHE.get(c);
+    Accessor a = byName.get(prop);
+    if (a == null) a = byName.computeIfAbsent(prop, p -> resolve(c, p));
+    return a;
+  }
+
+  /* ========== Resolución (una vez por clase/propiedad) ========== */
+
+  /** getX(), isX(), componente de record x() o campo público 'x'. */
+  static Accessor resolve(Class<?> c, String prop) {
+    if (prop.isEmpty()) return MISSING;
+    String cap = Character.toUpperCase(prop.charAt(0)) + prop.substring(1);
+    for (String g : new String[] { "get"+cap, "is"+cap }) {
+      MethodHandle mh = getter(c, g);
+      if (mh != null) return new Accessor(mh);
+    }
+    if (c.isRecord()) {
+      for (RecordComponent rc : c.getRecordComponents()) {
+        if (rc.getName().equals(prop)) {
+          MethodHandle mh = getter(c, rc.getAccessor().getName());
+          if (mh != null) return new Accessor(mh);
+        }
+      }
+    }
+    try {
+      Field f = c.getField(prop);
+      if (Modifier.isPublic(f.getModifiers()) && !Modifier.isStatic(f.getModifiers())) {
+        return new Accessor(adapt(LOOKUP.unreflectGetter(f)));
+      }
+    } catch (NoSuchFieldException | IllegalAccessException ignored) {}
+    return MISSING;
+  }
+
+  /** Getter público sin parámetros; si la clase no es pública se busca en supertipos públicos. */
+  private static MethodHandle getter(Class<?> c, String name) {
+    Method m;
+    try { m = c.getMethod(name); }
+    catch (NoSuchMethodException e) { return null; }
+    if (m.getParameterCount() != 0 || Modifier.isStatic(m.getModifiers()) || m.getReturnType() == void.class) return null;
+    MethodHandle mh = unreflect(m);
+    if (mh != null) return mh;
+    for (Class<?> s = c; s != null; s = s.getSuperclass()) {
+      for (Class<?> i : s.getInterfaces()) {
+        MethodHandle viaIface = getterOn(i, name);
+        if (viaIface != null) return viaIface;
+      }
+      if (s != c) {
+        MethodHandle viaSuper = getterOn(s, name);
+        if (viaSuper != null) return viaSuper;
+      }
+    }
+    return null;
+  }
+
+  private static MethodHandle getterOn(Class<?> type, String name) {
+    if (!Modifier.isPublic(type.getModifiers())) return null;
+    try { return unreflect(type.getMethod(name)); }
+    catch (NoSuchMethodException e) { return null; }
+  }
+
+  private static MethodHandle unreflect(Method m) {
+    try { return adapt(LOOKUP.unreflect(m)); }
+    catch (IllegalAccessException e) { return null; }
+  }
+
+  private static MethodHandle adapt(MethodHandle mh) { return mh.asType(GENERIC); }
+}
@@ -0,0 +1,140 @@
+package com.ronaldbit.mopla;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Destino de un render: los nodos escriben aquí a medida que se producen (sin armar la página en memoria). */
+abstract class RenderOutput {
+  abstract void append(CharSequence s) throws IOException;
+  abstract void append(CharSequence s, int start, int end) throws IOException;
+  abstract void append(char c) throws IOException;
+
+  /**
+   * Texto escapado para HTML sin armar un String intermedio: los tramos sin caracteres especiales
+   * van de una vez a la salida y solo los especiales se reemplazan (tabla {@link TemplateUtils#HTML_ESCAPES}).
+   */
+  void appendEscaped(CharSequence s) throws IOException {
+    String[] table = TemplateUtils.HTML_ESCAPES;
+    int len = s.length(), run = 0;
+    for (int i=0;i<len;i++) {
+      char c = s.charAt(i);
+      String rep = c < table.length ? table[c] : null;
+      if (rep == null) continue;
+      if (i > run) append(s, run, i);
+      append(rep);
+      run = i + 1;
+    }
+    if (run == 0) append(s);
+    else if (run < len) append(s, run, len);
+  }
+  /** Literal de la plantilla con su forma UTF-8 ya codificada al compilar. */
+  void appendLiteral(String text, byte[] utf8) throws IOException { append(text); }
+  /** Fin del render: vuelca buffers propios (no cierra el destino del usuario). */
+  void finish() throws IOException {}
+  /** @flush: envía lo renderizado hasta aquí (en un servlet, fuerza el envío por chunks). */
+  void flush() throws IOException {}
+  /** Salida producida hasta ahora: bytes en {@link Bytes}, chars en el resto (métricas). */
+  abstract long size();
+
+  static RenderOutput of(Appendable a) {
+    return a instanceof StringBuilder sb ? new Builder(sb) : new Chars(a);
+  }
+
+  /** Salida UTF-8 sobre un OutputStream: copia los literales pre-codificados y codifica solo lo dinámico. */
+  static RenderOutput of(OutputStream os) { return new Bytes(os); }
+
+  static final class Builder extends RenderOutput {
+    final StringBuilder sb;
+    private final int start;
+    Builder(StringBuilder sb) { this.sb = sb; this.start = sb.length(); }
+    void append(CharSequence s) { sb.append(s); }
+    void append(CharSequence s, int from, int to) { sb.append(s, from, to); }
+    void append(char c)         { sb.append(c); }
+    long size()                 { return sb.length() - start; }
+    @Override public String toString() { return sb.toString(); }
+  }
+
+  static class Chars extends RenderOutput {
+    private final Appendable a;
+    private long count;
+    Chars(Appendable a) { this.a = a; }
+    void append(CharSequence s) throws IOException { a.append(s); count += s.length(); }
+    void append(CharSequence s, int start, int end) throws IOException {
+      // Writer.append(csq, start, end) copia el tramo a un String nuevo; write(String, off, len) no
+      if (a instanceof java.io.Writer w && s instanceof String str) w.write(str, start, end - start);
+      else a.append(s, start, end);
+      count += end - start;
+    }
+    void append(char c) throws IOException         { a.append(c); count++; }
+    long size()                                    { return count; }
+    @Override void flush() throws IOException      { if (a instanceof java.io.Flushable f) f.flush(); }
+  }
+
+  static final class Bytes extends RenderOutput {
+    private final OutputStream os;
+    private byte[] buf = BufferPool.bytes();
+    private int n;
+    private long written; // ya enviado a os
+
+    Bytes(OutputStream os) { this.os = os; }
+
+    @Override void appendLiteral(String text, byte[] utf8) throws IOException {
+      if (utf8.length > buf.length - n) {
+        drain();
+        if (utf8.length > buf.length) { os.write(utf8); written += utf8.length; return; }
+      }
+      System.arraycopy(utf8, 0, buf, n, utf8.length);
+      n += utf8.length;
+    }
+
+    void append(CharSequence s) throws IOException { append(s, 0, s.length()); }
+
+    void append(CharSequence s, int start, int end) throws IOException {
+      for (int i=start; i<end; i++) {
+        if (n + 4 > buf.length) drain();
+        char c = s.charAt(i);
+        if (c < 0x80) {
+          buf[n++] = (byte) c;
+        } else if (c < 0x800) {
+          buf[n++] = (byte) (0xC0 | (c >> 6));
+          buf[n++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i+1 < end && Character.isLowSurrogate(s.charAt(i+1))) {
+          int cp = Character.toCodePoint(c, s.charAt(++i));
+          buf[n++] = (byte) (0xF0 | (cp >> 18));
+          buf[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+          buf[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+          buf[n++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          buf[n++] = '?'; // surrogate suelto: mismo reemplazo que String.getBytes
+        } else {
+          buf[n++] = (byte) (0xE0 | (c >> 12));
+          buf[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buf[n++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    void append(char c) throws IOException {
+      if (c < 0x80 && n < buf.length) { buf[n++] = (byte) c; return; }
+      append(String.valueOf(c));
+    }
+
+    @Override void flush() throws IOException {
+      drain();
+      os.flush();
+    }
+
+    @Override void finish() throws IOException {
+      drain();
+      os.flush();
+      BufferPool.release(buf);
+      buf = null;
+    }
+
+    private void drain() throws IOException {
+      if (n > 0) { os.write(buf, 0, n); written += n; n = 0; }
+    }
+
+    long size() { return written + n; }
+  }
+}
@@ -0,0 +1,30 @@
+package com.ronaldbit.mopla;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Estado mutable de un render: pila de includes y secciones del layout en curso. */
+final class RenderState {
+  final TemplateProcessor processor;
+  // null en los renders sintéticos de warmUp() (no cuentan como tráfico)
+  final MoplaMetrics metrics;
+  // render sintético de warmUp(): sin modelo real, no guarda fragmentos de @cache
+  final boolean synthetic;
+  final Set<Path> includeStack = new HashSet<>();
+  // secciones ya renderizadas del layout en curso (ver CompiledTemplate.LayoutPlan)
+  String[] slotValues;
+  // layout con @flush: las secciones se renderizan en su @yield, con el scope del render
+  Node[][] slotBodies;
+  Scope slotScope;
+  // dentro de un @cache: plantillas de las que sale el fragmento en curso (null fuera)
+  Set<String> fragmentSources;
+
+  RenderState(TemplateProcessor processor) { this(processor, false); }
+
+  RenderState(TemplateProcessor processor, boolean synthetic) {
+    this.processor = processor;
+    this.metrics = synthetic ? null : processor.metrics();
+    this.synthetic = synthetic;
+  }
+}
@@ -0,0 +1,39 @@
+package com.ronaldbit.mopla;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTML ya seguro: {@code @var} lo escribe tal cual, sin volver a escapar, y en la salida por bytes
+ * copia su UTF-8 ya codificado. Pensado para valores de {@code app} o globales que se escapan (o
+ * arman) una vez y se reusan en cada render.
+ *
+ * <pre>
+ * ctx.app().put("footer", SafeHtml.of("&lt;small&gt;© ACME&lt;/small&gt;"));   // HTML de confianza
+ * ctx.app().put("company", SafeHtml.escape(config.companyName()));          // texto escapado una vez
+ * </pre>
+ *
+ * Un filtro sobre el valor ({@code @var(x|upper)}) lo convierte en texto común, que sí se escapa.
+ */
+public final class SafeHtml implements CharSequence {
+  final String html;
+  final byte[] utf8;
+
+  private SafeHtml(String html) {
+    this.html = html;
+    this.utf8 = html.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** Marca {@code html} como seguro: no se escapa. Solo para contenido de confianza. */
+  public static SafeHtml of(String html) { return new SafeHtml(html == null ? "" : html); }
+
+  /** Escapa {@code text} ahora, una sola vez. */
+  public static SafeHtml escape(String text) { return new SafeHtml(text == null ? "" : TemplateUtils.htmlEscape(text)); }
+
+  @Override public int length()                              { return html.length(); }
+  @Override public char charAt(int index)                    { return html.charAt(index); }
+  @Override public CharSequence subSequence(int start, int end) { return html.subSequence(start, end); }
+  @Override public String toString()                         { return html; }
+
+  @Override public boolean equals(Object o) { return o instanceof SafeHtml s && s.html.equals(html); }
+  @Override public int hashCode()           { return html.hashCode(); }
+}
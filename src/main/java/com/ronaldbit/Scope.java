@@ -0,0 +1,98 @@
+package com.ronaldbit.mopla;
+
+import java.util.Map;
+
+/**
+ * Frame de variables encadenado. Cada hijo (@foreach, @with, @include con args) guarda solo sus
+ * propios bindings y delega el resto en el padre; la raíz enlaza sin copiar los locales del
+ * usuario, los globals del engine y los scopes de {@link MoplaContext}.
+ */
+final class Scope {
+  private static final String[] NO_KEYS = new String[0];
+  private static final Object[] NO_VALUES = new Object[0];
+
+  private final Scope parent;
+  private final Scope root;
+  // solo en la raíz
+  private final MoplaContext ctx;
+  private final Map<String,Object> locals;
+  private final Map<String,Object> globals;
+  // valores diferidos ya resueltos (o lanzados) en este render, por identidad
+  private Map<Object,Object> lazy;
+  // bindings propios (pocos: búsqueda lineal)
+  private String[] keys = NO_KEYS;
+  private Object[] values = NO_VALUES;
+  private int size;
+
+  private Scope(Scope parent, MoplaContext ctx, Map<String,Object> locals, Map<String,Object> globals) {
+    this.parent = parent;
+    this.root = parent == null ? this : parent.root;
+    this.ctx = ctx;
+    this.locals = locals;
+    this.globals = globals;
+  }
+
+  /** Raíz de un render: locales pisan a los globals; el contexto (puede ser null) se consulta aparte. */
+  static Scope root(MoplaContext ctx, Map<String,Object> globals, Map<String,Object> locals) {
+    return new Scope(null, ctx, locals, globals);
+  }
+
+  Scope child() { return new Scope(this, null, null, null); }
+
+  Scope child(Map<String,Object> bindings) {
+    Scope s = child();
+    bindings.forEach(s::set);
+    return s;
+  }
+
+  MoplaContext ctx() { return root.ctx; }
+
+  /** Memo de {@link LazyValues} del render (vive en la raíz). */
+  Map<Object,Object> lazyMemo() {
+    if (root.lazy == null) root.lazy = new java.util.IdentityHashMap<>();
+    return root.lazy;
+  }
+
+  /** Scope de contexto para un prefijo explícito de {@link VarPath} (null si no hay contexto). */
+  Map<String,Object> ctxScope(int scope) {
+    MoplaContext c = root.ctx;
+    if (c == null) return null;
+    return switch (scope) {
+      case VarPath.APP -> c.app();
+      case VarPath.SESSION -> c.session();
+      case VarPath.REQ -> c.req();
+      default -> null;
+    };
+  }
+
+  Object get(String key) {
+    for (Scope s = this; s != null; s = s.parent) {
+      for (int i = s.size - 1; i >= 0; i--) {
+        if (s.keys[i].equals(key)) return s.values[i];
+      }
+    }
+    Object v = root.locals == null ? null : root.locals.get(key);
+    if (v == null && root.globals != null) v = root.globals.get(key);
+    return v;
+  }
+
+  /** Binding propio de este frame (@set, variables del bucle). */
+  void set(String key, Object value) {
+    for (int i=0;i<size;i++) {
+      if (keys[i].equals(key)) { values[i] = value; return; }
+    }
+    if (size == keys.length) {
+      int n = Math.max(4, size * 2);
+      keys = java.util.Arrays.copyOf(keys, n);
+      values = java.util.Arrays.copyOf(values, n);
+    }
+    keys[size] = key;
+    values[size++] = value;
+  }
+
+  /** Descarta los bindings propios (reutilizar el frame entre iteraciones). */
+  void clear() {
+    for (int i=0;i<size;i++) values[i] = null;
+    size = 0;
+  }
+}
@@ -1,35 +1,307 @@
 package com.ronaldbit.mopla;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * Cache acotado de plantillas compiladas (por peso estimado en bytes y/o cantidad de entradas).
+ *
+ * Política SLRU: una entrada nueva entra a "probation"; si vuelve a pedirse antes de llegar a la
+ * cabeza pasa a "protected" (80% del peso), así las plantillas de una sola vez (p. ej. de un tenant
+ * poco activo) no desalojan a las calientes. Un hit solo marca la entrada (sin lock); las listas
+ * se reordenan al insertar/desalojar.
+ *
+ * Un hit no toca el disco: en producción lo cacheado vale hasta {@link #clear()}; en devMode un
+ * {@link TemplateWatcher} invalida por evento (si el sistema no ofrece WatchService, se vuelve a
+ * comparar la fecha de modificación en cada hit). Las plantillas inexistentes también se cachean
+ * (entrada con compiled == null), así un @include a un parcial que falta no consulta el disco.
+ */
 final class TemplateCache {
+  static final long DEFAULT_MAX_WEIGHT = 64L << 20;
+  private static final long MISSING_WEIGHT = 64;
+
   static final class Entry {
-    final String text;
-    final long lastModified;
-    Entry(String t, long lm) { this.text = t; this.lastModified = lm; }
+    final Path path;
+    final CompiledTemplate compiled; // null: el archivo no existe
+    final long lastModified;         // solo en devMode sin watcher
+    final long weight;
+    // marcado en cada hit desde la última vez que la política la miró
+    volatile boolean accessed;
+    // listas de la política (protegidas por el lock del cache)
+    Entry prev, next;
+    boolean inProtected;
+
+    Entry(Path path, CompiledTemplate c, long lm, long weight) {
+      this.path = path; this.compiled = c; this.lastModified = lm; this.weight = weight;
+    }
   }
 
+  /** Lista doblemente enlazada: cabeza = candidata a salir. */
+  private static final class Segment {
+    Entry head, tail;
+    long weight;
+    int size;
+
+    void addLast(Entry e) {
+      e.prev = tail; e.next = null;
+      if (tail == null) head = e; else tail.next = e;
+      tail = e;
+      weight += e.weight; size++;
+    }
+
+    void remove(Entry e) {
+      if (e.prev == null) head = e.next; else e.prev.next = e.next;
+      if (e.next == null) tail = e.prev; else e.next.prev = e.prev;
+      e.prev = e.next = null;
+      weight -= e.weight; size--;
+    }
+
+    void clear() { head = tail = null; weight = 0; size = 0; }
+  }
+
+  private final Path root;
+  private final boolean watchable; // root en disco (los recursos de un jar no cambian)
   private final boolean devMode;
   private final boolean cacheEnabled;
+  private final long maxWeight;   // <= 0: sin límite de peso
+  private final int maxEntries;   // <= 0: sin límite de entradas
   private final ConcurrentHashMap<Path, Entry> cache = new ConcurrentHashMap<>();
+  private final Segment probation = new Segment();
+  private final Segment protectedSeg = new Segment();
+  // layout → plantillas que lo extienden (la invalidación sigue la cadena @extend)
+  private final ConcurrentHashMap<Path, Set<Path>> dependents = new ConcurrentHashMap<>();
+
+  // devMode: watcher arrancado al primer miss; si no se pudo, se sondea lastModified
+  private volatile TemplateWatcher watcher;
+  private volatile boolean polling;
+  private volatile boolean closed;
+  // avisado en cada invalidación con los nombres afectados, null = todo (p. ej. descartar los
+  // fragmentos de @cache renderizados con lo viejo)
+  private volatile Consumer<Set<String>> onInvalidate = names -> {};
+  private volatile MoplaMetrics metrics;
+  // sube con cada invalidación: una carga que se cruzó con un cambio no se cachea
+  private volatile long generation;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadNanos = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  TemplateCache(Path root, boolean watchable, boolean devMode, boolean cacheEnabled) {
+    this(root, watchable, devMode, cacheEnabled, DEFAULT_MAX_WEIGHT, 0);
+  }
+
+  TemplateCache(Path root, boolean watchable, boolean devMode, boolean cacheEnabled, long maxWeight, int maxEntries) {
+    this.root = root; this.watchable = watchable; this.devMode = devMode; this.cacheEnabled = cacheEnabled;
+    this.maxWeight = maxWeight; this.maxEntries = maxEntries;
+    // sin templatesRoot propio (el directorio de trabajo) no se vigila recursivamente todo el proyecto:
+    // en devMode se compara lastModified en cada hit
+    this.polling = devMode && watchable && root.equals(Paths.get("").toAbsolutePath().normalize());
+  }
 
-  TemplateCache(boolean devMode, boolean cacheEnabled) {
-    this.devMode = devMode; this.cacheEnabled = cacheEnabled;
+  /**
+   * Devuelve la plantilla compilada (null si el archivo no existe); solo se vuelve a leer/compilar
+   * si fue invalidada (devMode), desalojada o no hay cache.
+   */
+  CompiledTemplate compiledCached(Path p, TemplateSource src, Function<String,CompiledTemplate> compiler) throws IOException {
+    return compiledCached(p, src, compiler, null);
   }
 
-  String readFileCached(Path p) throws IOException {
-    if (!cacheEnabled) return Files.readString(p, StandardCharsets.UTF_8);
-    long lm = lastModified(p);
+  /**
+   * Como {@link #compiledCached(Path, TemplateSource, Function)}; en un miss prueba antes
+   * {@code precompiled} (p. ej. el ".mplc" de build), que no lee el texto: si da null se lee y compila.
+   */
+  CompiledTemplate compiledCached(Path p, TemplateSource src, Function<String,CompiledTemplate> compiler,
+                                  Function<Path, PrecompiledTemplate.Loaded> precompiled) throws IOException {
+    MoplaEvents.TemplateLoad ev = MoplaEvents.enabled(MoplaEvents.TEMPLATE_LOAD) ? new MoplaEvents.TemplateLoad() : null;
+    if (ev != null) ev.begin();
+    if (!cacheEnabled) {
+      PrecompiledTemplate.Loaded pre = precompiled == null ? null : precompiled.apply(p);
+      String txt = pre != null ? null : src.read(p);
+      CompiledTemplate c = pre != null ? pre.template : txt == null ? null : compiler.apply(txt);
+      commit(ev, p, false, c);
+      return c;
+    }
     Entry e = cache.get(p);
-    if (e == null || (devMode && e.lastModified != lm)) {
-      String txt = Files.readString(p, StandardCharsets.UTF_8);
-      e = new Entry(txt, lm);
-      cache.put(p, e);
+    if (e != null && (!polling || e.lastModified == lastModified(p))) {
+      hits.increment();
+      if (!e.accessed) e.accessed = true;
+      MoplaMetrics m = metrics;
+      if (m != null) m.cacheHit(name(p));
+      commit(ev, p, true, e.compiled);
+      return e.compiled;
+    }
+    if (devMode && watchable && watcher == null && !polling) startWatcher();
+    misses.increment();
+    long gen = generation;
+    long lm = polling ? lastModified(p) : 0L;
+    long t0 = System.nanoTime();
+    PrecompiledTemplate.Loaded pre = precompiled == null ? null : precompiled.apply(p);
+    String txt = pre != null ? null : src.read(p);
+    CompiledTemplate c = pre != null ? pre.template : txt == null ? null : compiler.apply(txt);
+    if (c != null) c.cached = true;
+    long took = System.nanoTime() - t0;
+    loadNanos.add(took);
+    loads.increment();
+    MoplaMetrics m = metrics;
+    if (m != null) m.cacheMiss(name(p), took);
+    long weight = pre != null ? weigh(pre.sourceLength) : txt == null ? MISSING_WEIGHT : weigh(txt.length());
+    admit(new Entry(p, c, lm, weight), gen);
+    commit(ev, p, false, c);
+    return c;
+  }
+
+  private void commit(MoplaEvents.TemplateLoad ev, Path p, boolean hit, CompiledTemplate c) {
+    if (ev == null || !ev.shouldCommit()) return;
+    ev.template = name(p);
+    ev.cacheHit = hit;
+    ev.found = c != null;
+    ev.commit();
+  }
+
+  private synchronized void startWatcher() {
+    if (watcher != null || polling || closed) return;
+    try {
+      watcher = new TemplateWatcher(root, this::invalidate, this::clear);
+    } catch (IOException | UnsupportedOperationException e) {
+      polling = true;
+    }
+  }
+
+  // estimación: literales como String (2 bytes/char) + su copia UTF-8 + nodos
+  private static long weigh(int sourceLength) {
+    return 3L * sourceLength + 256;
+  }
+
+  private synchronized void admit(Entry e, long gen) {
+    if (gen != generation) return;
+    Entry old = cache.put(e.path, e);
+    if (old != null) unlink(old);
+    probation.addLast(e);
+    evict();
+  }
+
+  private void unlink(Entry e) {
+    (e.inProtected ? protectedSeg : probation).remove(e);
+  }
+
+  private boolean overLimit() {
+    long w = probation.weight + protectedSeg.weight;
+    int n = probation.size + protectedSeg.size;
+    return (maxWeight > 0 && w > maxWeight) || (maxEntries > 0 && n > maxEntries);
+  }
+
+  private void evict() {
+    long protectedMax = maxWeight > 0 ? maxWeight - maxWeight / 5 : Long.MAX_VALUE;
+    int protectedMaxN = maxEntries > 0 ? maxEntries - maxEntries / 5 : Integer.MAX_VALUE;
+    // cota de vueltas: cada entrada se promueve a lo sumo una vez por pasada
+    int budget = probation.size + protectedSeg.size + 1;
+    while (overLimit() && probation.head != null && budget-- > 0) {
+      Entry victim = probation.head;
+      probation.remove(victim);
+      if (victim.accessed) {
+        // segunda oportunidad: pasa a protected; lo que sobre allí vuelve a probation
+        victim.accessed = false;
+        victim.inProtected = true;
+        protectedSeg.addLast(victim);
+        while (protectedSeg.head != null && (protectedSeg.weight > protectedMax || protectedSeg.size > protectedMaxN)) {
+          Entry demoted = protectedSeg.head;
+          protectedSeg.remove(demoted);
+          demoted.inProtected = false;
+          demoted.accessed = false;
+          probation.addLast(demoted);
+        }
+        continue;
+      }
+      cache.remove(victim.path, victim);
+      evictions.increment();
+    }
+    // todo lo que quedaba era caliente: se desaloja por orden de llegada
+    while (overLimit() && (probation.head != null || protectedSeg.head != null)) {
+      Entry victim = probation.head != null ? probation.head : protectedSeg.head;
+      unlink(victim);
+      cache.remove(victim.path, victim);
+      evictions.increment();
+    }
+  }
+
+  /** Contadores y ocupación actuales. */
+  CacheStats stats() {
+    long w; int n;
+    synchronized (this) {
+      w = probation.weight + protectedSeg.weight;
+      n = probation.size + protectedSeg.size;
+    }
+    return new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadNanos.sum(), evictions.sum(), n, w, maxWeight, maxEntries);
+  }
+
+  /** Tamaño de salida aprendido por plantilla cacheada (las ausentes cacheadas no tienen). */
+  Map<String,Integer> sizeHints() {
+    Map<String,Integer> out = new TreeMap<>();
+    cache.values().forEach(e -> { if (e.compiled != null) out.put(e.compiled.name, e.compiled.sizeHint()); });
+    return out;
+  }
+
+  void onInvalidate(Consumer<Set<String>> c) { this.onInvalidate = c; }
+
+  void metrics(MoplaMetrics m) { this.metrics = m; }
+
+  // mismo nombre que usa el procesador en errores y métricas
+  private String name(Path p) {
+    Path rel = p.startsWith(root) ? root.relativize(p) : p;
+    return rel.toString().replace('\\', '/');
+  }
+
+  void addDependent(Path layout, Path child) {
+    dependents.computeIfAbsent(layout, k -> ConcurrentHashMap.newKeySet()).add(child);
+  }
+
+  /** Invalida una ruta (si es un directorio, todo lo que cuelga de él) y lo que la extiende, en cadena. */
+  synchronized void invalidate(Path p) {
+    generation++;
+    Set<String> names = new HashSet<>();
+    Deque<Path> work = new ArrayDeque<>();
+    Set<Path> seen = new HashSet<>();
+    work.add(p);
+    while (!work.isEmpty()) {
+      Path q = work.poll();
+      if (!seen.add(q)) continue;
+      names.add(name(q));
+      for (Entry e : cache.values()) {
+        if (e.path.startsWith(q)) {
+          names.add(name(e.path));
+          unlink(e);
+          cache.remove(e.path, e);
+        }
+      }
+      for (Iterator<Map.Entry<Path, Set<Path>>> it = dependents.entrySet().iterator(); it.hasNext(); ) {
+        Map.Entry<Path, Set<Path>> d = it.next();
+        if (d.getKey().startsWith(q)) { work.addAll(d.getValue()); it.remove(); }
+      }
     }
-    return e.text;
+    onInvalidate.accept(names);
+  }
+
+  /** Descarta todo lo compilado (p. ej. al registrar un filtro: los pipes se vinculan al compilar). */
+  synchronized void clear() {
+    generation++;
+    onInvalidate.accept(null);
+    cache.clear();
+    dependents.clear();
+    probation.clear();
+    protectedSeg.clear();
+  }
+
+  /** Detiene el watcher (si lo hay); el cache sigue sirviendo lo que tiene. */
+  synchronized void close() {
+    closed = true;
+    if (watcher != null) { watcher.close(); watcher = null; }
   }
 
   static long lastModified(Path p) {
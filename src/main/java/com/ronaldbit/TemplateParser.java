@@ -0,0 +1,277 @@
+package com.ronaldbit.mopla;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parser de una sola pasada: convierte el texto de una plantilla en un {@link CompiledTemplate}.
+ * Lo que no es una directiva reconocida (p. ej. un email) queda como texto literal.
+ */
+final class TemplateParser {
+  private static final Pattern FOREACH_HEAD = Pattern.compile("([a-zA-Z0-9_]+)\\s+in\\s+([a-zA-Z0-9_\\.]+)");
+  private static final String[] CLOSERS = { "@endforeach", "@endsection", "@endunless", "@endwith", "@endcache", "@endif", "@else" };
+  // marcador para directivas que no generan nodo (@* *@, @extend)
+  private static final Node SKIP = (st, vars, out) -> {};
+
+  private final String name;
+  private final String src;
+  private final Map<String, Filter> filters;
+  private int pos;
+  private String closedBy;
+  private String extendsFile;
+  private final Map<String, Node[]> sections = new LinkedHashMap<>();
+
+  private TemplateParser(String name, String src, Map<String, Filter> filters) {
+    this.name = name; this.src = src; this.filters = filters;
+  }
+
+  /** Los pipes de @var se vinculan contra {@code filters} aquí, una sola vez. */
+  static CompiledTemplate parse(String name, String src, Map<String, Filter> filters) {
+    TemplateParser p = new TemplateParser(name, src == null ? "" : src, filters);
+    Node[] nodes = p.parseBlock(null, 0);
+    return new CompiledTemplate(name, nodes, p.extendsFile, p.sections);
+  }
+
+  /* ========== Bloques ========== */
+
+  /** Parsea hasta uno de los cierres esperados (consumido; queda en {@code closedBy}). */
+  private Node[] parseBlock(String opener, int openAt, String... closers) {
+    List<Node> out = new ArrayList<>();
+    StringBuilder text = new StringBuilder();
+    while (pos < src.length()) {
+      int at = src.indexOf('@', pos);
+      if (at < 0) { text.append(src, pos, src.length()); pos = src.length(); break; }
+      text.append(src, pos, at);
+      pos = at;
+
+      String closer = matchCloser();
+      if (closer != null) {
+        if (!Arrays.asList(closers).contains(closer)) {
+          throw error(at, closers.length == 0 ? closer + " sin bloque abierto"
+                                              : closer + " inesperado, se esperaba " + closers[closers.length-1]);
+        }
+        pos += closer.length();
+        closedBy = closer;
+        flushText(text, out);
+        return out.toArray(new Node[0]);
+      }
+
+      Node n = parseDirective();
+      if (n == null) { text.append('@'); pos++; continue; }
+      flushText(text, out);
+      if (n != SKIP) out.add(n);
+    }
+    if (closers.length > 0) throw error(openAt, "Bloque " + opener + " sin cerrar (falta " + closers[closers.length-1] + ")");
+    closedBy = null;
+    flushText(text, out);
+    return out.toArray(new Node[0]);
+  }
+
+  private static void flushText(StringBuilder text, List<Node> out) {
+    if (text.length() == 0) return;
+    out.add(new Nodes.Text(text.toString()));
+    text.setLength(0);
+  }
+
+  private String matchCloser() {
+    for (String c : CLOSERS) if (src.startsWith(c, pos) && wordEnds(pos + c.length())) return c;
+    return null;
+  }
+
+  // "info@elsevier.com", "x@endifyz", "a@else.com": texto; "@endif." al final de una frase sí cierra
+  private boolean wordEnds(int i) {
+    if (i >= src.length()) return true;
+    char c = src.charAt(i);
+    if (c == '.') return i + 1 >= src.length() || !Character.isLetterOrDigit(src.charAt(i + 1));
+    return !isNameChar(c) && c != '(';
+  }
+
+  /* ========== Directivas ========== */
+
+  /** Directiva en {@code pos}; null (y pos intacto) si no lo es. */
+  private Node parseDirective() {
+    int start = pos;
+    if (eat("@*")) {
+      int end = src.indexOf("*@", pos);
+      if (end < 0) throw error(start, "Comentario @* sin cerrar");
+      pos = end + 2;
+      return SKIP;
+    }
+    if (eat("@extend(")) {
+      String file = quotedArg();
+      if (file == null || !eat(")")) return reset(start);
+      if (extendsFile == null) extendsFile = file;
+      return SKIP;
+    }
+    if (eat("@section(")) {
+      String sec = quotedArg();
+      if (sec == null || !eat(")")) throw error(start, "Cabecera de @section inválida");
+      Node[] body = parseBlock("@section", start, "@endsection");
+      sections.put(sec, body);
+      return new Nodes.Section(sec, body);
+    }
+    if (eat("@yield(")) {
+      String y = quotedArg();
+      if (y == null || !eat(")")) return reset(start);
+      return new Nodes.Yield(y);
+    }
+    if (eat("@include(")) {
+      String file = quotedArg();
+      if (file == null) return reset(start);
+      if (eat(")")) return new Nodes.Include(file, null);
+      if (!eat(",")) return reset(start);
+      skipWs();
+      String args = untilParen();
+      if (args == null || args.isEmpty()) return reset(start);
+      return new Nodes.Include(file, TemplateUtils.parseNamedArgs(args));
+    }
+    if (eat("@foreach(")) {
+      String head = untilParen();
+      Matcher m = head == null ? null : FOREACH_HEAD.matcher(head);
+      if (m == null || !m.matches()) throw error(start, "Cabecera de @foreach inválida, se esperaba (item in lista)");
+      Node[] body = parseBlock("@foreach", start, "@endforeach");
+      return new Nodes.Foreach(m.group(1), VarPath.of(m.group(2)), body);
+    }
+    if (eat("@if(")) {
+      String cond = nameArg();
+      if (cond == null || !eat(")")) throw error(start, "Condición de @if inválida");
+      Node[] thenB = parseBlock("@if", start, "@else", "@endif");
+      Node[] elseB = null;
+      if ("@else".equals(closedBy)) elseB = parseBlock("@if", start, "@endif");
+      return new Nodes.If(VarPath.of(cond), false, thenB, elseB);
+    }
+    if (eat("@unless(")) {
+      String cond = nameArg();
+      if (cond == null || !eat(")")) throw error(start, "Condición de @unless inválida");
+      Node[] body = parseBlock("@unless", start, "@endunless");
+      return new Nodes.If(VarPath.of(cond), true, body, null);
+    }
+    if (eat("@with(")) {
+      String args = untilParen();
+      if (args == null) throw error(start, "Cabecera de @with sin cerrar");
+      Node[] body = parseBlock("@with", start, "@endwith");
+      return new Nodes.With(TemplateUtils.parseNamedArgs(args), body);
+    }
+    if (eat("@cache(")) {
+      String key = quotedArg();
+      if (key == null) throw error(start, "Cabecera de @cache inválida, se esperaba (\"key\"[, ttl:\"60s\"])");
+      long ttl = 0;
+      if (!eat(")")) {
+        if (!eat(",")) throw error(start, "Cabecera de @cache inválida, se esperaba (\"key\"[, ttl:\"60s\"])");
+        String args = untilParen();
+        if (args == null) throw error(start, "Cabecera de @cache sin cerrar");
+        Object t = TemplateUtils.parseNamedArgs(args).get("ttl");
+        if (t != null) {
+          ttl = TemplateUtils.parseDurationMillis(t.toString());
+          if (ttl < 0) throw error(start, "ttl de @cache inválido: " + t + " (ej. 500ms, 60s, 5m, 2h, 1d)");
+        }
+      }
+      Node[] body = parseBlock("@cache", start, "@endcache");
+      return new Nodes.Cache(key, ttl, body, name);
+    }
+    if (eat("@set(")) {
+      String k = quotedArg();
+      if (k == null || !eat(",")) return reset(start);
+      skipWs();
+      String v = quotedArg(true);
+      if (v == null || !eat(")")) return reset(start);
+      return new Nodes.Set(k, v);
+    }
+    if (eat("@var(")) {
+      String inner = untilParen();
+      if (inner == null) return reset(start);
+      int bar = inner.indexOf('|');
+      String token = (bar < 0 ? inner : inner.substring(0, bar)).trim();
+      if (!isName(token)) return reset(start);
+      String pipe = bar < 0 ? null : inner.substring(bar + 1);
+      FilterChain chain;
+      try {
+        chain = pipe == null ? null : FilterChain.compile(pipe, filters);
+      } catch (RuntimeException e) {
+        // bind() prepara los argumentos (p. ej. un patrón de fecha inválido): error con posición
+        throw error(start, "Filtro inválido en @var(" + inner.trim() + "): " + e.getMessage());
+      }
+      return new Nodes.Var(VarPath.of(token), pipe, chain);
+    }
+    if (eat("@raw(")) {
+      String token = nameArg();
+      if (token == null || !eat(")")) return reset(start);
+      return new Nodes.Raw(VarPath.of(token));
+    }
+    if (eat("@asset(")) {
+      String p = quotedArg();
+      if (p == null || !eat(")")) return reset(start);
+      return new Nodes.Asset(p);
+    }
+    if (eat("@flush")) {
+      // "@flushed", "x@flush.io": texto
+      if (pos < src.length() && (isNameChar(src.charAt(pos)) || src.charAt(pos) == '(')) return reset(start);
+      return new Nodes.Flush();
+    }
+    if (eat("@dump(")) {
+      String token = nameArg();
+      if (token == null || !eat(")")) return reset(start);
+      return new Nodes.Dump(VarPath.of(token));
+    }
+    return null;
+  }
+
+  /* ========== Lexer mínimo ========== */
+
+  private boolean eat(String s) {
+    if (!src.startsWith(s, pos)) return false;
+    pos += s.length();
+    return true;
+  }
+
+  private void skipWs() {
+    while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+  }
+
+  private Node reset(int start) { pos = start; return null; }
+
+  /** "texto" no vacío; null si no hay. */
+  private String quotedArg() { return quotedArg(false); }
+
+  private String quotedArg(boolean allowEmpty) {
+    if (pos >= src.length() || src.charAt(pos) != '"') return null;
+    int end = src.indexOf('"', pos + 1);
+    if (end < 0 || (end == pos + 1 && !allowEmpty)) return null;
+    String s = src.substring(pos + 1, end);
+    pos = end + 1;
+    return s;
+  }
+
+  /** Nombre con puntos (a.b.c); null si no hay. */
+  private String nameArg() {
+    int s = pos;
+    while (pos < src.length() && isNameChar(src.charAt(pos))) pos++;
+    return pos > s ? src.substring(s, pos) : null;
+  }
+
+  /** Contenido hasta el primer ')' (consumido); null si no hay cierre. */
+  private String untilParen() {
+    int end = src.indexOf(')', pos);
+    if (end < 0) return null;
+    String s = src.substring(pos, end);
+    pos = end + 1;
+    return s;
+  }
+
+  private static boolean isName(String s) {
+    if (s.isEmpty()) return false;
+    for (int i=0;i<s.length();i++) if (!isNameChar(s.charAt(i))) return false;
+    return true;
+  }
+
+  private static boolean isNameChar(char c) {
+    return (c>='a' && c<='z') || (c>='A' && c<='Z') || (c>='0' && c<='9') || c=='_' || c=='.';
+  }
+
+  private TemplateSyntaxException error(int at, String msg) {
+    int line = 1;
+    for (int i=0;i<at && i<src.length();i++) if (src.charAt(i)=='\n') line++;
+    return new TemplateSyntaxException(name, line, msg);
+  }
+}
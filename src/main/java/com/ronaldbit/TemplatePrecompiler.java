@@ -0,0 +1,53 @@
+package com.ronaldbit.mopla;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precompilación en build (la usa {@code mopla-maven-plugin}): parsea cada plantilla y deja al lado
+ * su forma binaria ({@code home.html} → {@code home.html.mplc}), más un índice
+ * ({@value PrecompiledTemplate#INDEX}) con las que tienen una. En producción Mopla la carga en lugar
+ * de leer y parsear, salvo que el tamaño de la plantilla ya no sea el de entonces.
+ */
+public final class TemplatePrecompiler {
+  private TemplatePrecompiler() {}
+
+  public static final String EXTENSION = PrecompiledTemplate.EXTENSION;
+
+  /**
+   * Precompila todo {@code templatesDir} en {@code outputDir} (misma estructura de carpetas).
+   * Devuelve los errores de sintaxis encontrados; esas plantillas no generan archivo. Los archivos
+   * que no son texto UTF-8 se ignoran.
+   */
+  public static List<TemplateSyntaxException> precompile(Path templatesDir, Path outputDir) throws IOException {
+    List<TemplateSyntaxException> errors = new ArrayList<>();
+    StringBuilder index = new StringBuilder();
+    for (Path src : TemplateSource.FILES.list(templatesDir)) {
+      String rel = templatesDir.relativize(src).toString().replace('\\', '/');
+      String text;
+      try {
+        text = Files.readString(src, StandardCharsets.UTF_8);
+      } catch (CharacterCodingException e) {
+        continue;
+      }
+      try {
+        // los pipes se guardan como texto: no hace falta conocer los filtros custom en build
+        CompiledTemplate t = TemplateParser.parse(rel, text, Map.of());
+        Path out = outputDir.resolve(rel + EXTENSION);
+        Files.createDirectories(out.getParent());
+        Files.write(out, PrecompiledTemplate.write(t, text));
+        index.append(rel).append('\n');
+      } catch (TemplateSyntaxException e) {
+        errors.add(e);
+      }
+    }
+    Files.createDirectories(outputDir);
+    Files.writeString(outputDir.resolve(PrecompiledTemplate.INDEX), index, StandardCharsets.UTF_8);
+    return errors;
+  }
+}
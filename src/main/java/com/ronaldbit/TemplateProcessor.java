@@ -1,206 +1,242 @@
 package com.ronaldbit.mopla;
 
+import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
-import java.util.regex.Matcher;
-
-import static com.ronaldbit.mopla.Patterns.*;
-import static com.ronaldbit.mopla.TemplateUtils.*;
 
 final class TemplateProcessor {
   private final Path templatesRoot;
+  private final TemplateSource source;
   private final TemplateCache cache;
+  private final FragmentCache fragments;
   private final Map<String, Filter> filters;
+  private final java.util.concurrent.atomic.AtomicLong filterGeneration;
   private final boolean devMode;
   private final java.util.function.Function<String,String> assetHook;
-
-  TemplateProcessor(Path templatesRoot, TemplateCache cache, Map<String,Filter> filters, boolean devMode, java.util.function.Function<String,String> assetHook) {
+  private final int jitThreshold;
+  // null: los valores diferidos se resuelven al usarse, uno por uno
+  private final java.util.concurrent.Executor prefetch;
+  // @flush automático tras el </head> literal de cada plantilla
+  private final boolean flushAfterHead;
+  // minificación HTML al compilar (HtmlMinifier)
+  private final boolean minify;
+  // null: sin métricas (no se mide nada)
+  private final MoplaMetrics metrics;
+  // producción: plantillas con ".mplc" según el índice de build (se lee una vez; vacío si no hay)
+  private volatile Set<String> precompiled;
+
+  TemplateProcessor(Path templatesRoot, TemplateSource source, TemplateCache cache, FragmentCache fragments, Map<String,Filter> filters, java.util.concurrent.atomic.AtomicLong filterGeneration, boolean devMode, java.util.function.Function<String,String> assetHook, int jitThreshold, java.util.concurrent.Executor prefetch, boolean flushAfterHead, boolean minify, MoplaMetrics metrics) {
     this.templatesRoot = templatesRoot;
+    this.source = source;
     this.cache = cache;
+    this.fragments = fragments;
     this.filters = filters;
+    this.filterGeneration = filterGeneration;
     this.devMode = devMode;
     this.assetHook = (assetHook == null ? (s->s) : assetHook);
+    this.jitThreshold = jitThreshold;
+    this.prefetch = prefetch;
+    this.flushAfterHead = flushAfterHead;
+    this.minify = minify;
+    this.metrics = metrics;
   }
 
-  /* ========== Extends / Includes ========== */
+  boolean devMode()     { return devMode; }
+  boolean minify()      { return minify; }
+  long filterGeneration() { return filterGeneration.get(); }
+  int jitThreshold()    { return jitThreshold; }
+  FragmentCache fragments() { return fragments; }
+  MoplaMetrics metrics()    { return metrics; }
+
+  /* ========== Compilación ========== */
+
+  CompiledTemplate compile(String name, String text) {
+    return postProcess(TemplateParser.parse(name, text, filters), text);
+  }
+
+  private CompiledTemplate postProcess(CompiledTemplate t, String text) {
+    return postProcess(t, ETags.hash(text));
+  }
+
+  private CompiledTemplate postProcess(CompiledTemplate t, long version) {
+    if (minify) t = HtmlMinifier.minify(t);
+    if (flushAfterHead) t = t.withFlushAfterHead();
+    t.version = version;
+    return t;
+  }
+
+  /** Plantilla compilada (cacheada) para un archivo dentro de templatesRoot. */
+  CompiledTemplate load(Path p) throws IOException {
+    CompiledTemplate t = find(p);
+    if (t == null) throw new NoSuchFileException(p.toString());
+    return t;
+  }
+
+  /** Como {@link #load} pero null si no existe (la ausencia también queda cacheada). */
+  CompiledTemplate find(Path p) throws IOException {
+    return cache.compiledCached(p, source, text -> compile(p, text), devMode ? null : this::precompiled);
+  }
 
-  String renderIncludeRaw(String includeFile) throws Exception {
-    Path p = templatesRoot.resolve(includeFile).normalize();
-    if (!p.startsWith(templatesRoot)) throw new SecurityException("Include fuera de templates: " + includeFile);
-    if (!Files.exists(p)) return "";
-    return cache.readFileCached(p);
+  private CompiledTemplate compile(Path p, String text) {
+    return dependsOnLayout(p, compile(templatesRoot.relativize(p).toString(), text));
   }
 
-  String renderInclude(String includeFile, Map<String,Object> vars, Set<Path> includeStack) throws Exception {
-    Path p = templatesRoot.resolve(includeFile).normalize();
-    if (!p.startsWith(templatesRoot)) throw new SecurityException("Include fuera de templates: " + includeFile);
-    if (!Files.exists(p)) return "";
-    if (!includeStack.add(p)) throw new IllegalStateException("Ciclo de @include detectado: " + p);
+  /**
+   * ".mplc" generado en build, sin leer la fuente: solo si el índice lo lista y la plantilla tiene
+   * el tamaño con que se generó. null: se lee y parsea.
+   */
+  private PrecompiledTemplate.Loaded precompiled(Path p) {
     try {
-      String raw = cache.readFileCached(p);
-      return process(raw, vars, includeStack);
+      Set<String> index = precompiled;
+      if (index == null) {
+        precompiled = index = PrecompiledTemplate.readIndex(source.readBytes(templatesRoot.resolve(PrecompiledTemplate.INDEX)));
+      }
+      if (index.isEmpty() || !p.startsWith(templatesRoot) || !index.contains(name(p))) return null;
+      long size = source.size(p);
+      if (size < 0) return null;
+      byte[] data = source.readBytes(p.resolveSibling(p.getFileName() + PrecompiledTemplate.EXTENSION));
+      PrecompiledTemplate.Loaded pre = data == null ? null : PrecompiledTemplate.read(data, size, templatesRoot.relativize(p).toString(), filters);
+      if (pre == null) return null;
+      CompiledTemplate t = dependsOnLayout(p, postProcess(pre.template, pre.template.version));
+      return new PrecompiledTemplate.Loaded(t, pre.sourceLength);
+    } catch (IOException e) {
+      return null; // sin forma precompilada legible: se parsea
+    }
+  }
+
+  private CompiledTemplate dependsOnLayout(Path p, CompiledTemplate t) {
+    if (t.extendsFile != null) {
+      // si cambia el layout, esta plantilla (y su cadena @extend aplanada) se descarta también
+      try { cache.addDependent(resolve(t.extendsFile, "Layout"), p); }
+      catch (SecurityException ignored) { /* falla al renderizar */ }
+    }
+    return t;
+  }
+
+  /** Plantilla suelta del classpath ("classpath:x.html"), cacheada con su ruta virtual; null si no existe. */
+  CompiledTemplate findResource(String location, ClasspathSource resources) throws IOException {
+    Path p = ClasspathSource.ROOT.resolve(ClasspathSource.resourceName(location)).normalize();
+    if (!p.startsWith(ClasspathSource.ROOT)) throw new SecurityException("Recurso fuera del classpath: " + location);
+    return cache.compiledCached(p, resources, text -> compile(location, text));
+  }
+
+  /** Todas las plantillas bajo templatesRoot (disco o índice del classpath). */
+  List<Path> templates() throws IOException { return source.list(templatesRoot); }
+
+  /** Nombre relativo a templatesRoot (como se ve en errores y reportes). */
+  String name(Path p) { return templatesRoot.relativize(p).toString().replace('\\', '/'); }
+
+  Path resolve(String file, String what) {
+    Path p = templatesRoot.resolve(file).normalize();
+    if (!p.startsWith(templatesRoot)) throw new SecurityException(what + " fuera de templates: " + file);
+    return p;
+  }
+
+  /* ========== Render ========== */
+
+  /** Render a String sobre un buffer del pool dimensionado con lo aprendido de esta plantilla. */
+  String render(CompiledTemplate t, Scope vars) throws Exception {
+    StringBuilder sb = BufferPool.chars(t.sizeHint());
+    try {
+      render(t, vars, RenderOutput.of(sb));
+      t.recordSize(sb.length());
+      return sb.toString();
     } finally {
-      includeStack.remove(p);
+      BufferPool.release(sb);
     }
   }
 
-  String applyExtends(String content, Map<String,Object> vars, Set<Path> includeStack) throws Exception {
-    Matcher em = EXTEND.matcher(content);
-    if (!em.find()) return content;
+  void render(CompiledTemplate t, Scope vars, RenderOutput out) throws Exception {
+    MoplaMetrics m = metrics;
+    long t0 = m == null ? 0 : System.nanoTime();
+    MoplaEvents.Render ev = MoplaEvents.enabled(MoplaEvents.RENDER) ? new MoplaEvents.Render() : null;
+    if (ev != null) ev.begin();
+    if (prefetch != null) LazyValues.prefetch(vars, prefetchRefs(t), prefetch);
+    t.render(new RenderState(this), vars, out);
+    out.finish();
+    if (m != null) m.render(displayName(t), System.nanoTime() - t0, out.size());
+    if (ev != null && ev.shouldCommit()) {
+      ev.template = displayName(t);
+      ev.outputSize = out.size();
+      ev.commit();
+    }
+  }
 
-    String layoutFile = em.group(1);
-    String layout = renderIncludeRaw(layoutFile);
+  /** Render de warmUp(): sin métricas ni evento de render y sin guardar fragmentos de @cache. */
+  void renderSynthetic(CompiledTemplate t, Scope vars, RenderOutput out) throws Exception {
+    t.render(new RenderState(this, true), vars, out);
+    out.finish();
+  }
+
+  private static String displayName(CompiledTemplate t) {
+    return t.name == null ? "<string>" : t.name.replace('\\', '/');
+  }
 
-    Map<String,String> sections = new HashMap<>();
-    Matcher sm = SECTION.matcher(content);
-    while (sm.find()) {
-      String name = sm.group(1);
-      String body = sm.group(2);
-      sections.put(name, process(body, vars, includeStack));
+  // variables de la plantilla y de sus layouts (los includes se resuelven al usarse)
+  private Collection<VarPath> prefetchRefs(CompiledTemplate t) throws IOException {
+    Collection<VarPath> refs = t.prefetchRefs;
+    if (refs != null) return refs;
+    Set<VarPath> all = new LinkedHashSet<>(t.variables());
+    Set<String> seen = new HashSet<>();
+    for (CompiledTemplate l = t; l.extendsFile != null && seen.add(l.extendsFile); ) {
+      l = loadLayout(l.extendsFile);
+      if (l == null) break;
+      all.addAll(l.variables());
     }
-    String composed = replaceAll(layout, YIELD, m -> sections.getOrDefault(m.group(1), ""));
-    return applyExtends(composed, vars, includeStack);
-  }
-
-  /* ========== Pipeline principal ========== */
-  // Orden:
-  // 0) Comentarios
-  // 1) Includes con args
-  // 2) Includes simples
-  // 3) Foreach
-  // 4) If ... else
-  // 5) Unless (inverso)
-  // 6) If simple
-  // 7) With (scope temporal)
-  // 8) Set
-  // 9) Yield / Raw / Var
-
-  String process(String content, Map<String,Object> vars, Set<Path> includeStack) throws Exception {
-
-    // 0) comentarios
-    content = replaceAll(content, COMMENTS, m -> "");
-
-    // 1) includes con locals: @include("file", k:"v":x:"y")
-    content = replaceAll(content, INCLUDE_ARGS, m -> {
-      String file = m.group(1);
-      Map<String,Object> locals = TemplateUtils.parseNamedArgs(m.group(2));
-      Map<String,Object> merged = new HashMap<>(vars);
-      merged.putAll(locals);
-      return renderInclude(file, merged, includeStack);
-    });
-
-    // 2) includes simples
-    content = replaceAll(content, INCLUDE, m -> renderInclude(m.group(1), vars, includeStack));
-
-    // 3) foreach
-    content = replaceAll(content, FOREACH, m -> {
-      String itemName = m.group(1);
-      String listName = m.group(2);
-      String block    = m.group(3);
-
-      Object listObj = TemplateUtils.resolveVar(vars, listName);
-      if (!(listObj instanceof Iterable<?> it)) return "";
-      StringBuilder out = new StringBuilder();
-      int index = 0;
-      for (Object item : it) {
-        Map<String,Object> loopVars = new HashMap<>(vars);
-        loopVars.put(itemName, item);
-        loopVars.put(itemName + "_index", index++);
-        out.append(process(block, loopVars, includeStack));
-      }
-      return out.toString();
-    });
-
-    // 4) if ... else ... endif
-    content = replaceAll(content, IF_ELSE, m -> {
-      String name    = m.group(1);
-      String thenB   = m.group(2);
-      String elseB   = m.group(3);
-      boolean ok = TemplateUtils.truthy(TemplateUtils.resolveVar(vars, name));
-      return process(ok ? thenB : elseB, vars, includeStack);
-    });
-
-    // 5) unless(cond) ... endunless  (bloque inverso)
-    content = replaceAll(content, UNLESS, m -> {
-      String name = m.group(1);
-      String body = m.group(2);
-      boolean ok = TemplateUtils.truthy(TemplateUtils.resolveVar(vars, name));
-      return process(ok ? "" : body, vars, includeStack);
-    });
-
-    // 6) if ... endif
-    content = replaceAll(content, IF_ONLY, m -> {
-      String name  = m.group(1);
-      String body  = m.group(2);
-      if (TemplateUtils.truthy(TemplateUtils.resolveVar(vars, name))) return process(body, vars, includeStack);
-      return "";
-    });
-
-    // 7) with(locals) ... endwith  (scope temporal)
-    content = replaceAll(content, WITH, m -> {
-      Map<String,Object> locals = TemplateUtils.parseNamedArgs(m.group(1));
-      String body = m.group(2);
-      Map<String,Object> scoped = new HashMap<>(vars);
-      scoped.putAll(locals); // locals pisan
-      return process(body, scoped, includeStack);
-    });
-
-    // 8) @set("k","v")
-    content = replaceAll(content, SET, m -> {
-      String k = m.group(1), v = m.group(2);
-      vars.put(k, v);
-      return "";
-    });
-
-    // asset hook: @asset("path") -> hook(path)
-    content = replaceAll(content, ASSET, m -> {
-      String p = m.group(1);
-      try { return assetHook.apply(p); } catch(Exception e) { return p; }
-    });
-
-    // dump (solo en devMode)
-    content = replaceAll(content, DUMP, m -> {
-      if (!devMode) return "";
-      Object val = TemplateUtils.resolveVar(vars, m.group(1));
-      String out = TemplateUtils.dump(val);
-      return "<pre>" + TemplateUtils.htmlEscape(out) + "</pre>";
-    });
-
-    // 9) yields y variables
-    content = replaceAll(content, YIELD, m -> {
-      Object val = TemplateUtils.resolveVar(vars, m.group(1));
-      return Objects.toString(val, "");
-    });
-    content = replaceAll(content, RAW, m -> {
-      Object val = TemplateUtils.resolveVar(vars, m.group(1));
-      return Objects.toString(val, "");
-    });
-    content = replaceAll(content, VAR, m -> {
-      String token = m.group(1);
-      String pipe  = m.group(2);
-      Object val = TemplateUtils.resolveVar(vars, token);
-
-      if (pipe != null && !pipe.isBlank()) {
-        String chain = pipe.substring(1);
-        for (String rawF : chain.split("\\|")) {
-          rawF = rawF.trim();
-          if (rawF.isEmpty()) continue;
-          String fname;
-          String[] fargs = new String[0];
-          int colon = rawF.indexOf(':');
-          if (colon >= 0) {
-            fname = rawF.substring(0, colon).trim();
-            fargs = TemplateUtils.parseArgs(rawF.substring(colon+1));
-          } else {
-            fname = rawF;
-          }
-          Filter f = filters.get(fname);
-          if (f != null) val = f.apply(val, fargs);
-        }
-      }
-      return TemplateUtils.htmlEscape(Objects.toString(val, ""));
-    });
+    refs = new ArrayList<>(all);
+    t.prefetchRefs = refs;
+    return refs;
+  }
+
+  /* ========== ETag ========== */
+
+  /** ETag de lo que produciría {@code render(t, vars)}; null si no se puede derivar sin renderizar. */
+  String etag(CompiledTemplate t, Scope vars) throws IOException {
+    return ETags.etag(etagPlan(t), vars);
+  }
+
+  ETags.Plan etagPlan(CompiledTemplate t) throws IOException {
+    ETags.Plan p = t.etagPlan;
+    if (p != null) return p;
+    // en devMode un layout o include pudo recompilarse: se recalcula en cada uso
+    p = ETags.plan(this, t);
+    if (!devMode) t.etagPlan = p;
+    return p;
+  }
+
+  /* ========== Extends / Includes ========== */
+
+  /** Layout de un @extend; null si no existe (el render queda vacío). */
+  CompiledTemplate loadLayout(String layoutFile) throws IOException {
+    return find(resolve(layoutFile, "Layout"));
+  }
+
+  void renderInclude(String includeFile, Scope vars, RenderState st, RenderOutput out) throws Exception {
+    MoplaMetrics m = st.metrics;
+    long t0 = m == null ? 0 : System.nanoTime();
+    MoplaEvents.Include ev = MoplaEvents.enabled(MoplaEvents.INCLUDE) ? new MoplaEvents.Include() : null;
+    if (ev != null) ev.begin();
+    Path p = resolve(includeFile, "Include");
+    // también si falta: al crearlo, el fragmento que lo incluía deja de valer
+    if (st.fragmentSources != null) st.fragmentSources.add(name(p));
+    CompiledTemplate t = find(p);
+    if (t == null) return;
+    if (!st.includeStack.add(p)) throw new IllegalStateException("Ciclo de @include detectado: " + p);
+    try {
+      t.render(st, vars, out);
+    } finally {
+      st.includeStack.remove(p);
+    }
+    if (m != null) m.include(name(p), System.nanoTime() - t0);
+    if (ev != null && ev.shouldCommit()) {
+      ev.template = name(p);
+      ev.commit();
+    }
+  }
+
+  /* ========== Assets ========== */
 
-    return content;
+  String asset(String p) {
+    try { return assetHook.apply(p); } catch(Exception e) { return p; }
   }
 }
@@ -0,0 +1,56 @@
+package com.ronaldbit.mopla;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** De dónde sale el texto de una plantilla: disco (templatesRoot) o recursos del classpath. */
+interface TemplateSource {
+  /** Texto de la plantilla o null si no existe. */
+  String read(Path p) throws IOException;
+
+  /** Contenido binario (p. ej. el ".mplc" precompilado) o null si no existe. */
+  byte[] readBytes(Path p) throws IOException;
+
+  /** Tamaño en bytes sin leer el contenido; -1 si no existe o no se sabe. */
+  default long size(Path p) throws IOException { return -1; }
+
+  /** Todas las plantillas bajo {@code root} (para el warm-up); vacío si no se pueden listar. */
+  default List<Path> list(Path root) throws IOException { return List.of(); }
+
+  /** Si los cambios se pueden vigilar con un WatchService (solo archivos en disco). */
+  default boolean watchable() { return false; }
+
+  /** Ni ocultos ni formas precompiladas. */
+  static boolean isTemplateName(String fileName) {
+    return !fileName.startsWith(".") && !fileName.endsWith(PrecompiledTemplate.EXTENSION);
+  }
+
+  TemplateSource FILES = new TemplateSource() {
+    @Override public String read(Path p) throws IOException {
+      try { return Files.readString(p, StandardCharsets.UTF_8); }
+      catch (NoSuchFileException e) { return null; }
+    }
+    @Override public byte[] readBytes(Path p) throws IOException {
+      try { return Files.readAllBytes(p); }
+      catch (NoSuchFileException e) { return null; }
+    }
+    @Override public long size(Path p) throws IOException {
+      try { return Files.size(p); }
+      catch (NoSuchFileException e) { return -1; }
+    }
+    @Override public List<Path> list(Path root) throws IOException {
+      if (!Files.isDirectory(root)) return List.of();
+      try (Stream<Path> s = Files.walk(root)) {
+        return s.filter(Files::isRegularFile)
+                .filter(p -> isTemplateName(p.getFileName().toString()))
+                .sorted()
+                .collect(Collectors.toList());
+      }
+    }
+    @Override public boolean watchable() { return true; }
+  };
+}
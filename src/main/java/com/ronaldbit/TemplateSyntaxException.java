@@ -0,0 +1,18 @@
+package com.ronaldbit.mopla;
+
+/** Error de sintaxis detectado al compilar una plantilla (bloque sin cerrar, cierre huérfano...). */
+public class TemplateSyntaxException extends IllegalStateException {
+  private static final long serialVersionUID = 1L;
+
+  private final String template;
+  private final int line;
+
+  public TemplateSyntaxException(String template, int line, String message) {
+    super((template == null ? "<string>" : template) + ":" + line + ": " + message);
+    this.template = template;
+    this.line = line;
+  }
+
+  public String template() { return template; }
+  public int line()        { return line; }
+}
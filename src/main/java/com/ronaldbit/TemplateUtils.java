@@ -1,28 +1,10 @@
 package com.ronaldbit.mopla;
 
-import java.lang.reflect.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 final class TemplateUtils {
   private TemplateUtils() {}
 
-  interface Replacer { String apply(Matcher m) throws Exception; }
-
-  static String replaceAll(String input, Pattern pattern, Replacer fn) throws Exception {
-    Matcher m = pattern.matcher(input);
-    StringBuffer sb = new StringBuffer();
-    while (m.find()) {
-      String rep = fn.apply(m);
-      // seguro para appendReplacement
-      rep = rep.replace("\\", "\\\\").replace("$", "\\$");
-      m.appendReplacement(sb, rep);
-    }
-    m.appendTail(sb);
-    return sb.toString();
-  }
-
   static boolean truthy(Object v) {
     if (v == null) return false;
     if (v instanceof Boolean b) return b;
@@ -31,6 +13,55 @@ final class TemplateUtils {
     return true;
   }
 
+  /** "500ms", "60s", "5m", "2h", "1d" o número (segundos) → milisegundos; -1 si no se entiende. */
+  static long parseDurationMillis(String raw) {
+    String s = raw.trim().toLowerCase(Locale.ROOT);
+    long unit = 1000;
+    String num = s;
+    if (s.endsWith("ms"))     { unit = 1; num = s.substring(0, s.length()-2); }
+    else if (s.endsWith("s")) { unit = 1000; num = s.substring(0, s.length()-1); }
+    else if (s.endsWith("m")) { unit = 60_000; num = s.substring(0, s.length()-1); }
+    else if (s.endsWith("h")) { unit = 3_600_000; num = s.substring(0, s.length()-1); }
+    else if (s.endsWith("d")) { unit = 86_400_000; num = s.substring(0, s.length()-1); }
+    try {
+      long n = Long.parseLong(num.trim());
+      return n < 0 ? -1 : n * unit;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  static int indexOfIgnoreCase(String s, String what, int from) {
+    for (int i=from, last=s.length()-what.length(); i<=last; i++) {
+      if (s.regionMatches(true, i, what, 0, what.length())) return i;
+    }
+    return -1;
+  }
+
+  /** Recorrido de lo que acepta @foreach: Iterable, Iterator, Stream (también IntStream...) y arrays; null si no es iterable. */
+  static Iterator<?> iterator(Object v) {
+    if (v instanceof Iterable<?> it) return it.iterator();
+    if (v instanceof Iterator<?> it) return it;
+    if (v instanceof java.util.stream.BaseStream<?,?> s) return s.iterator();
+    if (v instanceof Object[] a) return Arrays.asList(a).iterator();
+    if (v instanceof int[] a) return Arrays.stream(a).iterator();
+    if (v instanceof long[] a) return Arrays.stream(a).iterator();
+    if (v instanceof double[] a) return Arrays.stream(a).iterator();
+    if (v != null && v.getClass().isArray()) {
+      // byte[], char[], boolean[]...: por índice, sin copiar
+      int len = java.lang.reflect.Array.getLength(v);
+      return new Iterator<Object>() {
+        int i;
+        public boolean hasNext() { return i < len; }
+        public Object next() {
+          if (i >= len) throw new NoSuchElementException();
+          return java.lang.reflect.Array.get(v, i++);
+        }
+      };
+    }
+    return null;
+  }
+
   static String[] parseArgs(String raw) {
     List<String> out = new ArrayList<>();
     StringBuilder cur = new StringBuilder();
@@ -72,22 +103,43 @@ final class TemplateUtils {
     return out;
   }
 
+  /** Reemplazo HTML por carácter ASCII (null = se copia tal cual). */
+  static final String[] HTML_ESCAPES = new String[128];
+  static {
+    HTML_ESCAPES['&']  = "&amp;";
+    HTML_ESCAPES['<']  = "&lt;";
+    HTML_ESCAPES['>']  = "&gt;";
+    HTML_ESCAPES['"']  = "&quot;";
+    HTML_ESCAPES['\''] = "&#39;";
+  }
+
   static String htmlEscape(String s) {
-    StringBuilder sb = new StringBuilder(Math.max(16, s.length()));
-    for (int i=0;i<s.length();i++) {
+    // caso común (ids, números, nombres): nada que escapar, sin copia
+    int first = 0;
+    while (first < s.length() && !needsEscape(s.charAt(first))) first++;
+    if (first == s.length()) return s;
+    StringBuilder sb = new StringBuilder(s.length() + 16);
+    sb.append(s, 0, first);
+    for (int i=first;i<s.length();i++) {
       char c = s.charAt(i);
-      switch (c) {
-        case '&' -> sb.append("&amp;");
-        case '<' -> sb.append("&lt;");
-        case '>' -> sb.append("&gt;");
-        case '"' -> sb.append("&quot;");
-        case '\''-> sb.append("&#39;");
-        default  -> sb.append(c);
-      }
+      String rep = c < HTML_ESCAPES.length ? HTML_ESCAPES[c] : null;
+      if (rep != null) sb.append(rep);
+      else sb.append(c);
     }
     return sb.toString();
   }
 
+  private static boolean needsEscape(char c) {
+    return c < HTML_ESCAPES.length && HTML_ESCAPES[c] != null;
+  }
+
+  /** Tipos del JDK cuyo toString() nunca lleva caracteres a escapar (números, booleanos). */
+  static boolean isPlainScalar(Object v) {
+    return v instanceof Integer || v instanceof Long || v instanceof Double || v instanceof Boolean
+        || v instanceof java.math.BigDecimal || v instanceof Float || v instanceof Short || v instanceof Byte
+        || v instanceof java.math.BigInteger;
+  }
+
   static String jsonEscape(String s) {
     StringBuilder sb = new StringBuilder(Math.max(16, s.length()));
     for (int i=0;i<s.length();i++) {
@@ -139,58 +191,48 @@ final class TemplateUtils {
     return Objects.toString(o, "");
   }
 
-  /** Devuelve value navegando por "a.b.c" soportando Map y beans (getX()/isX()). */
-  static Object dotGet(Object base, String path) {
-    if (base == null || path == null || path.isEmpty()) return null;
-    String[] parts = path.split("\\.");
-    Object cur = base;
-    for (String p : parts) {
-      if (cur == null) return null;
-      if (cur instanceof Map<?,?> m) {
-        cur = m.get(p);
-      } else {
-        cur = beanGet(cur, p);
-      }
-    }
-    return cur;
+  /** Introspección segura de beans: getX(), isX(), componente de record o campo público 'x' (accesores cacheados). */
+  static Object beanGet(Object bean, String prop) {
+    return PropertyAccessors.get(bean, prop);
   }
 
-  /** Introspección segura de beans: busca getX(), isX() o campo público 'x'. */
-  static Object beanGet(Object bean, String prop) {
-    Class<?> c = bean.getClass();
-    String cap = prop.substring(0,1).toUpperCase() + (prop.length()>1 ? prop.substring(1) : "");
-    String[] getters = new String[] { "get"+cap, "is"+cap };
-    for (String g : getters) {
-      try {
-        Method m = c.getMethod(g);
-        if (!Modifier.isPublic(m.getModifiers())) continue;
-        if (m.getParameterCount()==0) return m.invoke(bean);
-      } catch (NoSuchMethodException ignored) {
-      } catch (Exception e) {
-        return null;
+  /**
+   * Locales (modelo, @foreach, @with, @set, globales) primero; req > session > app solo como respaldo
+   * (un parámetro de la URL no pisa al modelo). Respeta prefijos explícitos (app./session./req.).
+   */
+  static Object resolveVar(Scope vars, VarPath path) {
+    return resolveVar(vars, path, null);
+  }
+
+  /** Igual, con los accesores de beans ligados a {@code site} (código generado); null: los de {@link PropertyAccessors}. */
+  static Object resolveVar(Scope vars, VarPath path, VarSite site) {
+    String[] segs = path.segments;
+    Object v = null;
+    if (path.scope != VarPath.CASCADE) {
+      Map<String,Object> scoped = vars.ctxScope(path.scope);
+      if (scoped != null) v = walk(vars, scoped.get(segs[0]), segs, site);
+      if (v == null) v = walk(vars, vars.get(path.full[0]), path.full, site); // local llamado "app"/"session"/"req"
+    } else {
+      v = walk(vars, vars.get(segs[0]), segs, site);
+      MoplaContext ctx = vars.ctx();
+      if (v == null && ctx != null) {
+        v = walk(vars, ctx.req().get(segs[0]), segs, site);
+        if (v == null) v = walk(vars, ctx.session().get(segs[0]), segs, site);
+        if (v == null) v = walk(vars, ctx.app().get(segs[0]), segs, site);
       }
     }
-    // Campo público
-    try {
-      Field f = c.getField(prop);
-      if (Modifier.isPublic(f.getModifiers())) return f.get(bean);
-    } catch (Exception ignored) {}
-    return null;
+    if (v == null && path.full.length > 1) v = LazyValues.resolve(vars, vars.get(path.token)); // clave literal con puntos
+    return v != null ? v : "";
   }
 
-  /** Cascada req > session > app > local; respeta prefijos explícitos (app./session./req.). */
-  static Object resolveVar(Map<String,Object> vars, String token) {
-    if (token.startsWith("app.") || token.startsWith("session.") || token.startsWith("req."))
-      return dotGet(vars, token)!=null ? dotGet(vars, token) : vars.getOrDefault(token,"");
-
-    Object v = dotGet(vars, "req." + token);
-    if (v != null) return v;
-    v = dotGet(vars, "session." + token);
-    if (v != null) return v;
-    v = dotGet(vars, "app." + token);
-    if (v != null) return v;
-
-    Object d = dotGet(vars, token);
-    return d != null ? d : vars.getOrDefault(token, "");
+  /** Navega "a.b.c" desde el valor del primer segmento, soportando Map, beans y valores diferidos (Supplier/Future). */
+  static Object walk(Scope vars, Object base, String[] segs, VarSite site) {
+    Object cur = LazyValues.resolve(vars, base);
+    for (int i=1; i<segs.length && cur != null; i++) {
+      if (cur instanceof Map<?,?> m) cur = m.get(segs[i]);
+      else cur = site == null ? beanGet(cur, segs[i]) : site.property(cur, segs, i);
+      cur = LazyValues.resolve(vars, cur);
+    }
+    return cur;
   }
 }
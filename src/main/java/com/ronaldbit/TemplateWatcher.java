@@ -0,0 +1,69 @@
+package com.ronaldbit.mopla;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Vigila templatesRoot (recursivo) en un hilo daemon y avisa qué ruta cambió, para que el cache
+ * invalide por evento en lugar de consultar la fecha de modificación en cada hit (devMode).
+ */
+final class TemplateWatcher implements Closeable {
+  private final WatchService ws;
+  private final Consumer<Path> onChange;
+  private final Runnable onOverflow;
+  private final Thread thread;
+
+  TemplateWatcher(Path root, Consumer<Path> onChange, Runnable onOverflow) throws IOException {
+    this.ws = root.getFileSystem().newWatchService();
+    this.onChange = onChange;
+    this.onOverflow = onOverflow;
+    try {
+      registerTree(root);
+    } catch (IOException | RuntimeException e) {
+      ws.close();
+      throw e;
+    }
+    this.thread = new Thread(this::loop, "mopla-template-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void registerTree(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) return;
+    Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+      @Override public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+        d.register(ws, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void loop() {
+    try {
+      while (true) {
+        WatchKey key = ws.take();
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> ev : key.pollEvents()) {
+          if (ev.kind() == OVERFLOW) { onOverflow.run(); continue; }
+          Path p = dir.resolve((Path) ev.context());
+          if (ev.kind() == ENTRY_CREATE && Files.isDirectory(p)) {
+            try { registerTree(p); } catch (IOException e) { onOverflow.run(); }
+          }
+          onChange.accept(p);
+        }
+        key.reset();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // cerrado
+    }
+  }
+
+  @Override public void close() {
+    try { ws.close(); } catch (IOException ignored) {}
+  }
+}
@@ -0,0 +1,53 @@
+package com.ronaldbit.mopla;
+
+/**
+ * Referencia a variable ya parseada ("session.user.name"): segmentos pre-divididos y prefijo de scope
+ * explícito, para que {@link TemplateUtils#resolveVar} no haga split en cada render.
+ */
+final class VarPath {
+  static final int CASCADE = 0, APP = 1, SESSION = 2, REQ = 3;
+
+  final String token;
+  /** Scope explícito (APP/SESSION/REQ) o CASCADE si no lleva prefijo. */
+  final int scope;
+  /** Segmentos tras el prefijo de scope (si lo hay). */
+  final String[] segments;
+  /** Todos los segmentos, incluido el prefijo (acceso a un local llamado "app", "session"...). */
+  final String[] full;
+
+  private VarPath(String token) {
+    this.token = token;
+    this.full = split(token);
+    int sc = CASCADE;
+    if (full.length > 1) {
+      switch (full[0]) {
+        case "app"     -> sc = APP;
+        case "session" -> sc = SESSION;
+        case "req"     -> sc = REQ;
+        default        -> {}
+      }
+    }
+    this.scope = sc;
+    if (sc == CASCADE) {
+      this.segments = full;
+    } else {
+      this.segments = new String[full.length - 1];
+      System.arraycopy(full, 1, segments, 0, segments.length);
+    }
+  }
+
+  static VarPath of(String token) { return new VarPath(token); }
+
+  private static String[] split(String token) {
+    int n = 1;
+    for (int i=0;i<token.length();i++) if (token.charAt(i)=='.') n++;
+    String[] out = new String[n];
+    int start = 0, k = 0;
+    for (int i=0;i<=token.length();i++) {
+      if (i == token.length() || token.charAt(i)=='.') { out[k++] = token.substring(start, i); start = i+1; }
+    }
+    return out;
+  }
+
+  @Override public String toString() { return token; }
+}
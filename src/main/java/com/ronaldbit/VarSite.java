@@ -0,0 +1,37 @@
+package com.ronaldbit.mopla;
+
+/**
+ * Lectura de una variable desde el código generado por {@link BytecodeCompiler}: la misma cascada
+ * que {@link TemplateUtils#resolveVar}, pero cada segmento de bean guarda la última clase vista y su
+ * accesor (cache monomórfico por sitio), sin pasar por el ClassValue y el mapa de
+ * {@link PropertyAccessors} en cada render.
+ */
+final class VarSite {
+  final VarPath path;
+  // por índice en path.full; carrera benigna (cada Bound es inmutable)
+  private final Bound[] bound;
+
+  VarSite(VarPath path) {
+    this.path = path;
+    this.bound = new Bound[path.full.length];
+  }
+
+  Object get(Scope vars) {
+    return TemplateUtils.resolveVar(vars, path, this);
+  }
+
+  /** Propiedad {@code segs[i]} de un bean; {@code segs} es path.segments o path.full. */
+  Object property(Object bean, String[] segs, int i) {
+    int k = i + bound.length - segs.length;
+    Class<?> c = bean.getClass();
+    Bound b = bound[k];
+    if (b == null || b.type != c) bound[k] = b = new Bound(c, PropertyAccessors.accessor(c, segs[i]));
+    return b.accessor.get(bean);
+  }
+
+  private static final class Bound {
+    final Class<?> type;
+    final PropertyAccessors.Accessor accessor;
+    Bound(Class<?> type, PropertyAccessors.Accessor accessor) { this.type = type; this.accessor = accessor; }
+  }
+}
@@ -0,0 +1,79 @@
+package com.ronaldbit.mopla;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Precalentado: compila en paralelo todo lo que hay bajo templatesRoot (queda en el cache), revisa
+ * el grafo @extend/@include y, opcionalmente, hace unos renders sintéticos para que el JIT (y el
+ * tier de bytecode) arranquen antes del primer request real. Todo corre en un pool propio; los
+ * renders sintéticos no cuentan en las métricas ni guardan fragmentos de @cache.
+ */
+final class WarmUp {
+  private WarmUp() {}
+
+  static WarmUpReport run(TemplateProcessor proc, Supplier<Scope> emptyScope, int renders) throws IOException {
+    List<Path> files = proc.templates();
+    Map<Path,CompiledTemplate> ok = new ConcurrentHashMap<>();
+    Map<String,String> errors = new ConcurrentSkipListMap<>();
+    Set<String> missing = new ConcurrentSkipListSet<>();
+    AtomicInteger done = new AtomicInteger();
+
+    ForkJoinPool pool = new ForkJoinPool();
+    try {
+      long t0 = System.nanoTime();
+      pool.submit(() -> files.parallelStream().forEach(p -> {
+        try {
+          CompiledTemplate t = proc.find(p);
+          if (t != null) ok.put(p, t);
+        } catch (TemplateSyntaxException e) {
+          errors.put(proc.name(p), e.getMessage());
+        } catch (IOException | RuntimeException e) {
+          errors.put(proc.name(p), e.toString());
+        }
+      })).join();
+
+      // grafo: cada @extend/@include tiene que existir (si no, se renderiza vacío sin avisar)
+      pool.submit(() -> ok.entrySet().parallelStream().forEach(e -> {
+        for (String dep : e.getValue().dependencies()) {
+          try {
+            Path d = proc.resolve(dep, "Include");
+            if (!ok.containsKey(d) && proc.find(d) == null) missing.add(proc.name(e.getKey()) + " -> " + dep);
+          } catch (TemplateSyntaxException ignored) {
+            // el destino existe pero no compila: si estaba listado ya figura en errors
+          } catch (IOException | RuntimeException ex) {
+            missing.add(proc.name(e.getKey()) + " -> " + dep + " (" + ex.getMessage() + ")");
+          }
+        }
+      })).join();
+      long compileMs = (System.nanoTime() - t0) / 1_000_000;
+
+      long t1 = System.nanoTime();
+      if (renders > 0) {
+        pool.submit(() -> ok.values().parallelStream().forEach(t -> {
+          for (int i = 0; i < renders; i++) {
+            try {
+              proc.renderSynthetic(t, emptyScope.get(), RenderOutput.of(Writer.nullWriter()));
+            } catch (Exception ignored) {
+              // sin datos reales algunas plantillas pueden fallar; solo importa calentar
+            }
+            done.incrementAndGet();
+          }
+        })).join();
+      }
+      long renderMs = (System.nanoTime() - t1) / 1_000_000;
+
+      return new WarmUpReport(files.size(), ok.size(), errors, new ArrayList<>(missing), done.get(), compileMs, renderMs);
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
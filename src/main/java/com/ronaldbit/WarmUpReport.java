@@ -0,0 +1,49 @@
+package com.ronaldbit.mopla;
+
+import java.util.List;
+import java.util.Map;
+
+/** Resultado de {@link Mopla#warmUp()}: qué se compiló, qué falló y cuánto tardó. */
+public final class WarmUpReport {
+  private final int templates;
+  private final int compiled;
+  private final Map<String,String> errors;
+  private final List<String> missingReferences;
+  private final int renders;
+  private final long compileMillis;
+  private final long renderMillis;
+
+  WarmUpReport(int templates, int compiled, Map<String,String> errors, List<String> missingReferences,
+               int renders, long compileMillis, long renderMillis) {
+    this.templates = templates;
+    this.compiled = compiled;
+    this.errors = Map.copyOf(errors);
+    this.missingReferences = List.copyOf(missingReferences);
+    this.renders = renders;
+    this.compileMillis = compileMillis;
+    this.renderMillis = renderMillis;
+  }
+
+  /** Archivos encontrados bajo templatesRoot. */
+  public int templates()                   { return templates; }
+  /** Compilados sin error (quedan en el cache). */
+  public int compiled()                    { return compiled; }
+  /** Plantilla → error (sintaxis con línea, o de lectura). */
+  public Map<String,String> errors()       { return errors; }
+  /** "home.html -> partials/x.html": @include/@extend a archivos que no existen. */
+  public List<String> missingReferences()  { return missingReferences; }
+  /** Renders sintéticos ejecutados (con variables vacías). */
+  public int renders()                     { return renders; }
+  public long compileMillis()              { return compileMillis; }
+  public long renderMillis()               { return renderMillis; }
+  public long totalMillis()                { return compileMillis + renderMillis; }
+
+  /** Sin errores de sintaxis/lectura (las referencias faltantes no cuentan: se renderizan vacías). */
+  public boolean ok() { return errors.isEmpty(); }
+
+  @Override public String toString() {
+    return "WarmUpReport{templates=" + templates + ", compiled=" + compiled + ", errors=" + errors.size()
+        + ", missing=" + missingReferences.size() + ", renders=" + renders
+        + ", compileMs=" + compileMillis + ", renderMs=" + renderMillis + "}";
+  }
+}
@@ -6,15 +6,28 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.web.servlet.View;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Map;
 
 public class MoplaView implements View {
   private final Mopla mopla;
   private final String template;
+  // ETag + 304 cuando se puede derivar sin renderizar (ver Mopla.etag)
+  private final boolean etag;
+  // guardar copia renderizada y comprimida (las vistas estáticas la guardan siempre que haya ETag)
+  private final boolean precompress;
+  private final PrecompressedPages pages;
 
   public MoplaView(Mopla mopla, String template) {
+    this(mopla, template, false, false, null);
+  }
+
+  MoplaView(Mopla mopla, String template, boolean etag, boolean precompress, PrecompressedPages pages) {
     this.mopla = mopla;
     this.template = template;
+    this.etag = etag;
+    this.precompress = precompress;
+    this.pages = pages;
   }
 
   @Override
@@ -34,8 +47,47 @@ public class MoplaView implements View {
     // request params
     request.getParameterMap().forEach((k,v) -> { if (v!=null && v.length>0) ctx.req().put(k, v.length==1? v[0] : java.util.Arrays.asList(v)); });
 
-    String out = mopla.render(template, ctx, (Map<String,Object>) model);
+    @SuppressWarnings("unchecked")
+    Map<String,Object> vars = (Map<String,Object>) model;
     response.setContentType(getContentType());
-    response.getWriter().write(out);
+
+    // GET con la misma plantilla y los mismos valores: 304 sin renderizar
+    String tag = conditional(request, response) ? mopla.etag(template, ctx, vars) : null;
+    if (tag != null) {
+      boolean cached = pages != null && (precompress || mopla.isStatic(template));
+      response.setHeader("ETag", tag);
+      if (cached) response.addHeader("Vary", "Accept-Encoding");
+      String ifNoneMatch = request.getHeader("If-None-Match");
+      if (PrecompressedPages.matches(ifNoneMatch, tag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      // la copia que recibió fue la comprimida
+      if (cached && PrecompressedPages.matches(ifNoneMatch, PrecompressedPages.gzipTag(tag))) {
+        response.setHeader("ETag", PrecompressedPages.gzipTag(tag));
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      if (cached) {
+        PrecompressedPages.Page page = pages.get(template, tag, () -> {
+          ByteArrayOutputStream bos = new ByteArrayOutputStream();
+          mopla.render(template, ctx, vars, bos);
+          return bos.toByteArray();
+        });
+        PrecompressedPages.write(page, request, response);
+        return;
+      }
+    }
+
+    // streaming directo a la respuesta en bytes: los literales ya van codificados en UTF-8.
+    // Cada @flush (o flushAfterHead) hace flush() de la respuesta: se confirma y sigue por chunks
+    mopla.render(template, ctx, vars, response.getOutputStream());
+  }
+
+  private boolean conditional(HttpServletRequest request, HttpServletResponse response) {
+    if (!etag && !precompress) return false;
+    String method = request.getMethod();
+    // una página de error (status ya puesto por el controller) no se cachea
+    return ("GET".equals(method) || "HEAD".equals(method)) && response.getStatus() == HttpServletResponse.SC_OK;
   }
 }
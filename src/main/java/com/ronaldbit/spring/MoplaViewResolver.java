@@ -5,18 +5,30 @@ import org.springframework.web.servlet.View;
 import org.springframework.web.servlet.ViewResolver;
 
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MoplaViewResolver implements ViewResolver {
   private final Mopla mopla;
   private String suffix = ".html";
+  private boolean etag = false;
+  private final Set<String> precompressed = ConcurrentHashMap.newKeySet();
+  private final PrecompressedPages pages = new PrecompressedPages();
 
   public MoplaViewResolver(Mopla mopla) { this.mopla = mopla; }
 
   public void setSuffix(String s) { this.suffix = s; }
 
+  /** ETag y 304 en GET cuando se puede derivar sin renderizar; las vistas estáticas se sirven ya comprimidas. */
+  public void setEtag(boolean etag) { this.etag = etag; }
+
+  /** Vistas cuya salida se guarda renderizada y comprimida con gzip mientras no cambie su ETag (p. ej. landings). */
+  public void setPrecompressed(String... viewNames) { this.precompressed.addAll(java.util.Arrays.asList(viewNames)); }
+
   @Override
   public View resolveViewName(String viewName, Locale locale) throws Exception {
     String tpl = viewName.endsWith(suffix) ? viewName : viewName + suffix;
-    return new MoplaView(mopla, tpl);
+    boolean pre = precompressed.contains(viewName) || precompressed.contains(tpl);
+    return new MoplaView(mopla, tpl, etag, pre, pages);
   }
 }
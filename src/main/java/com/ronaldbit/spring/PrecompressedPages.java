@@ -0,0 +1,102 @@
+package com.ronaldbit.spring;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Copia ya renderizada (y comprimida con gzip) de las vistas estáticas o marcadas como precomprimidas:
+ * una por vista, válida mientras su ETag no cambie. Compartida por las vistas de un resolver.
+ */
+final class PrecompressedPages {
+
+  interface Renderer { byte[] render() throws Exception; }
+
+  static final class Page {
+    final String etag;
+    final byte[] raw;
+    final byte[] gzip;
+    Page(String etag, byte[] raw, byte[] gzip) { this.etag = etag; this.raw = raw; this.gzip = gzip; }
+  }
+
+  private final Map<String, Page> pages = new ConcurrentHashMap<>();
+
+  /** Copia de {@code template} para este ETag; si cambió (o no hay), se renderiza y comprime una vez. */
+  Page get(String template, String etag, Renderer renderer) throws Exception {
+    Page p = pages.get(template);
+    if (p != null && p.etag.equals(etag)) return p;
+    // dos requests simultáneos pueden renderizarla los dos: queda la última, son iguales
+    byte[] raw = renderer.render();
+    p = new Page(etag, raw, gzip(raw));
+    pages.put(template, p);
+    return p;
+  }
+
+  /**
+   * Escribe la copia comprimida si el cliente acepta gzip (y sale más chica), si no la original. La
+   * comprimida lleva su propio ETag ({@link #gzipTag}): son bytes distintos para un mismo recurso.
+   */
+  static void write(Page p, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    boolean gz = p.gzip.length < p.raw.length && acceptsGzip(request.getHeader("Accept-Encoding"));
+    byte[] body = gz ? p.gzip : p.raw;
+    if (gz) {
+      response.setHeader("Content-Encoding", "gzip");
+      response.setHeader("ETag", gzipTag(p.etag));
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  private static byte[] gzip(byte[] raw) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 4 + 64);
+    // se comprime una vez por versión: vale la pena el nivel máximo
+    try (GZIPOutputStream gz = new GZIPOutputStream(bos) { { def.setLevel(Deflater.BEST_COMPRESSION); } }) {
+      gz.write(raw);
+    }
+    return bos.toByteArray();
+  }
+
+  /** Accept-Encoding con gzip (o *) y q distinto de 0. */
+  static boolean acceptsGzip(String header) {
+    if (header == null) return false;
+    double gzipQ = -1, anyQ = -1;
+    for (String part : header.split(",")) {
+      String[] kv = part.split(";");
+      String coding = kv[0].trim().toLowerCase();
+      double q = 1;
+      for (int i=1;i<kv.length;i++) {
+        String param = kv[i].trim();
+        if (param.startsWith("q=")) {
+          try { q = Double.parseDouble(param.substring(2).trim()); } catch (NumberFormatException e) { q = 0; }
+        }
+      }
+      if (coding.equals("gzip") || coding.equals("x-gzip")) gzipQ = q;
+      else if (coding.equals("*")) anyQ = q;
+    }
+    return gzipQ >= 0 ? gzipQ > 0 : anyQ > 0;
+  }
+
+  /** ETag de la variante gzip: {@code W/"abc"} → {@code W/"abc-gzip"}. */
+  static String gzipTag(String etag) {
+    return etag.substring(0, etag.length() - 1) + "-gzip\"";
+  }
+
+  /** If-None-Match coincide con {@code etag} (comparación débil, como pide RFC 9110 para GET). */
+  static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) return false;
+    String opaque = opaque(etag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      String c = candidate.trim();
+      if (c.equals("*") || opaque(c).equals(opaque)) return true;
+    }
+    return false;
+  }
+
+  private static String opaque(String tag) { return tag.startsWith("W/") ? tag.substring(2) : tag; }
+}
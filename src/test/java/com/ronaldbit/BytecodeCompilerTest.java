@@ -0,0 +1,105 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Year;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BytecodeCompilerTest {
+  @TempDir Path dir;
+
+  private static final Map<String, Filter> FILTERS = new HashMap<>();
+  static {
+    DefaultFilters.registerAll(FILTERS);
+    FILTERS.put("boom", (v, a) -> { throw new IllegalStateException("boom"); });
+  }
+
+  private TemplateProcessor processor() {
+    return new TemplateProcessor(dir, TemplateSource.FILES, new TemplateCache(dir, false, false, false), new FragmentCache(0),
+        FILTERS, new AtomicLong(), false, null, 0, null, false, false, null);
+  }
+
+  private String render(CompiledTemplate t, Map<String,Object> vars) throws Exception {
+    return processor().render(t, Scope.root(null, Map.of(), vars));
+  }
+
+  /** Renderiza interpretado y compilado; exige una clase oculta y la misma salida. */
+  private String both(String src, Map<String,Object> vars) throws Exception {
+    CompiledTemplate t = TemplateParser.parse("t.html", src, FILTERS);
+    CompiledTemplate jit = BytecodeCompiler.compile(t);
+    assertEquals(1, jit.nodes.length);
+    assertTrue(jit.nodes[0].getClass().isHidden(), "se esperaba una clase oculta");
+    String expected = render(t, vars);
+    assertEquals(expected, render(jit, vars));
+    return expected;
+  }
+
+  public static final class Item {
+    private final String name;
+    public Item(String name) { this.name = name; }
+    public String getName() { return name; }
+  }
+
+  @Test
+  void loopsAndBranchesMatchTheInterpreter() throws Exception {
+    String src = "<ul>@foreach(u in users)<li>@var(u_index) @var(u.name|upper)"
+        + "@if(u.admin) [admin]@else [user]@endif@unless(u.name) sin nombre@endunless</li>@endforeach</ul>";
+    List<Map<String,Object>> users = List.of(Map.of("name", "ana", "admin", true), Map.of("name", "<b>", "admin", false), Map.of("admin", false));
+    assertEquals("<ul><li>0 ANA [admin]</li><li>1 &lt;B&gt; [user]</li><li>2  [user] sin nombre</li></ul>",
+        both(src, Map.of("users", users)));
+    assertEquals("<ul></ul>", both(src, Map.of("users", List.of())));
+    assertEquals("<ul></ul>", both(src, Map.of()));
+  }
+
+  @Test
+  void nestedLoopsWithSetWithSectionAndRaw() throws Exception {
+    String src = "@foreach(row in rows)@set(\"sep\", \"|\")@foreach(c in row)@var(c)@var(sep)@endforeach;@endforeach"
+        + "@with(title:\"T\")<h1>@var(title)</h1>@endwith@section(\"s\")@raw(html)@endsection@var(sep)";
+    Map<String,Object> vars = Map.of("rows", new Object[] { List.of(1, 2), new int[] { 3 } }, "html", "<i>x</i>");
+    assertEquals("1|2|;3|;<h1>T</h1><i>x</i>", both(src, vars));
+  }
+
+  @Test
+  void beanPropertiesStayCorrectAcrossClassesAtTheSameSite() throws Exception {
+    String src = "@foreach(it in items)[@var(it.value)][@var(it.name)]@endforeach";
+    List<Object> items = List.of(Year.of(2020), Map.entry("k", "v"), Map.of("value", "m", "name", "n"), new Item("i"), Year.of(2021));
+    assertEquals("[2020][][v][][m][n][][i][2021][]", both(src, Map.of("items", items)));
+  }
+
+  @Test
+  void streamsAreClosedAfterTheLoopAndWhenTheBodyFails() throws Exception {
+    CompiledTemplate t = BytecodeCompiler.compile(TemplateParser.parse("t.html", "@foreach(x in xs)@var(x|boom)@endforeach", FILTERS));
+    assertTrue(t.nodes[0].getClass().isHidden());
+    AtomicInteger closed = new AtomicInteger();
+    Stream<String> s = Stream.of("a").onClose(closed::incrementAndGet);
+    assertThrows(IllegalStateException.class, () -> render(t, Map.of("xs", s)));
+    assertEquals(1, closed.get());
+
+    closed.set(0);
+    Stream<String> ok = Stream.of("a", "b").onClose(closed::incrementAndGet);
+    assertEquals("ab", render(BytecodeCompiler.compile(TemplateParser.parse("t.html", "@foreach(x in xs)@var(x)@endforeach", FILTERS)), Map.of("xs", ok)));
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  void oversizedBlocksFallBackToOneMethodPerBlock() throws Exception {
+    String src = "@if(a)" + "@var(a)".repeat(2000) + "@endif" + "@foreach(x in xs)" + "@var(x),".repeat(200) + "@endforeach";
+    assertEquals("1".repeat(2000) + "2,".repeat(200), both(src, Map.of("a", 1, "xs", List.of(2))));
+  }
+
+  @Test
+  void moplaTiersUpToTheGeneratedClass() throws Exception {
+    Files.writeString(dir.resolve("p.html"), "@foreach(n in ns)@if(n)<b>@var(n)</b>@endif@endforeach");
+    Mopla m = Mopla.builder().templatesRoot(dir.toString()).devMode(false).jitThreshold(1).build();
+    Map<String,Object> vars = Map.of("ns", List.of(1, 0, 2));
+    for (int i=0;i<3;i++) assertEquals("<b>1</b><b>2</b>", m.render("p.html", vars));
+  }
+}
@@ -0,0 +1,53 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ETagsTest {
+  @TempDir Path dir;
+
+  private Mopla mopla() {
+    return Mopla.builder().templatesRoot(dir.toString()).devMode(false)
+        .register("money", (v, a) -> "$" + v).build();
+  }
+
+  @Test
+  void sameTemplateAndValuesGiveSameEtag() throws Exception {
+    Files.writeString(dir.resolve("price.html"), "<p>@var(price|money)</p>");
+    String a = mopla().etag("price.html", null, Map.of("price", 10));
+    assertNotNull(a);
+    assertEquals(a, mopla().etag("price.html", null, Map.of("price", 10)));
+    assertNotEquals(a, mopla().etag("price.html", null, Map.of("price", 11)));
+  }
+
+  @Test
+  void reRegisteringAFilterChangesTheEtag() throws Exception {
+    Files.writeString(dir.resolve("price.html"), "<p>@var(price|money)</p>");
+    Mopla m = mopla();
+    Map<String,Object> vars = Map.of("price", 10);
+    String before = m.etag("price.html", null, vars);
+    assertEquals("<p>$10</p>", m.render("price.html", vars));
+
+    m.register("money", (v, a) -> v + " USD");
+    assertEquals("<p>10 USD</p>", m.render("price.html", vars));
+    assertNotEquals(before, m.etag("price.html", null, vars));
+  }
+
+  @Test
+  void fragmentCacheAnywhereInTheChainMakesItNonDerivable() throws Exception {
+    Files.writeString(dir.resolve("menu.html"), "@cache(\"menu-{lang}\")<nav>@var(lang)</nav>@endcache");
+    Files.writeString(dir.resolve("layout.html"), "<body>@yield(\"main\")</body>");
+    Files.writeString(dir.resolve("page.html"), "@extend(\"layout.html\")@section(\"main\")@include(\"menu.html\")@endsection");
+    Files.writeString(dir.resolve("plain.html"), "@extend(\"layout.html\")@section(\"main\")hola@endsection");
+    Mopla m = mopla();
+    assertNull(m.etag("page.html", null, Map.of("lang", "es")));
+    assertFalse(m.isStatic("menu.html"));
+    assertNotNull(m.etag("plain.html", null, Map.of()));
+  }
+}
@@ -0,0 +1,141 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FragmentCacheTest {
+  @TempDir Path dir;
+
+  // 100 caracteres ASCII: 2*100 + 100 + 64
+  private static final long WEIGHT = 364;
+
+  private static FragmentCache.Fragment put(FragmentCache fc, String key, long ttlMillis) {
+    return fc.put(key, "x".repeat(100), ttlMillis, 0, Set.of());
+  }
+
+  @Test
+  void entriesExpireAfterTheirTtl() throws Exception {
+    FragmentCache fc = new FragmentCache(0);
+    put(fc, "short", 20);
+    put(fc, "forever", 0);
+    assertNotNull(fc.get("short"));
+    Thread.sleep(40);
+    assertNull(fc.get("short"));
+    assertNotNull(fc.get("forever"));
+    assertEquals(1, fc.stats().size());
+    assertEquals(WEIGHT, fc.stats().weight());
+  }
+
+  @Test
+  void overWeightDropsExpiredFirstThenLeastRecentlyUsed() throws Exception {
+    FragmentCache fc = new FragmentCache(3 * WEIGHT + WEIGHT / 2); // 90%: caben 3
+    put(fc, "old", 10);
+    put(fc, "a", 0);
+    Thread.sleep(20);
+    put(fc, "b", 0);
+    put(fc, "c", 0);                        // se pasa: sale el vencido, sin contar como desalojo
+    assertEquals(0, fc.stats().evictions());
+    assertEquals(3, fc.stats().size());
+
+    assertNotNull(fc.get("a"));             // b queda como la menos usada
+    put(fc, "d", 0);                        // baja al 90%: sale b
+    assertEquals(1, fc.stats().evictions());
+    assertNull(fc.get("b"));
+    assertNotNull(fc.get("a"));
+    assertNotNull(fc.get("c"));
+    assertNotNull(fc.get("d"));
+    assertEquals(3 * WEIGHT, fc.stats().weight());
+  }
+
+  @Test
+  void tooLargeFragmentIsUsedButNotKept() {
+    FragmentCache fc = new FragmentCache(WEIGHT - 1);
+    assertEquals("x".repeat(100), put(fc, "big", 0).text);
+    assertNull(fc.get("big"));
+    assertEquals(0, fc.stats().weight());
+  }
+
+  @Test
+  void invalidateByKeyPrefixAndTemplate() {
+    FragmentCache fc = new FragmentCache(0);
+    fc.put("menu-es", "es", 0, 0, Set.of("page.html", "menu.html"));
+    fc.put("menu-en", "en", 0, 0, Set.of("page.html"));
+    fc.put("footer", "f", 0, 0, Set.of("parts/footer.html"));
+    fc.put("other", "o", 0, 0, Set.of("other.html"));
+
+    fc.invalidate("menu-en");
+    assertNull(fc.get("menu-en"));
+    fc.invalidateTemplates(Set.of("menu.html"));
+    assertNull(fc.get("menu-es"));
+    fc.invalidateTemplates(Set.of("parts"));  // directorio
+    assertNull(fc.get("footer"));
+    assertNotNull(fc.get("other"));
+    fc.invalidatePrefix("oth");
+    assertNull(fc.get("other"));
+
+    fc.put("x", "x", 0, 0, Set.of("x.html"));
+    fc.invalidateTemplates(null);
+    assertEquals(0, fc.stats().size());
+    assertEquals(0, fc.stats().weight());
+  }
+
+  /* ========== @cache ========== */
+
+  private TemplateProcessor processor(TemplateCache cache, FragmentCache fragments) {
+    cache.onInvalidate(fragments::invalidateTemplates);
+    return new TemplateProcessor(dir, TemplateSource.FILES, cache, fragments, new HashMap<>(), new AtomicLong(),
+        false, null, 0, null, false, false, null);
+  }
+
+  private static String render(TemplateProcessor p, Path file, Map<String,Object> vars) throws Exception {
+    return p.render(p.load(file), Scope.root(null, Map.of(), vars));
+  }
+
+  @Test
+  void keyInterpolatesVariables() throws Exception {
+    Path page = Files.writeString(dir.resolve("page.html"), "@cache(\"menu-{lang}\")@var(label)@endcache");
+    FragmentCache fc = new FragmentCache(0);
+    TemplateProcessor p = processor(new TemplateCache(dir, false, false, true), fc);
+    assertEquals("Inicio", render(p, page, Map.of("lang", "es", "label", "Inicio")));
+    assertEquals("Home", render(p, page, Map.of("lang", "en", "label", "Home")));
+    // misma key: sale del cache aunque cambie el modelo
+    assertEquals("Inicio", render(p, page, Map.of("lang", "es", "label", "otro")));
+    assertNotNull(fc.get("menu-es"));
+    assertNotNull(fc.get("menu-en"));
+  }
+
+  @Test
+  void invalidatingATemplateDropsOnlyItsFragments() throws Exception {
+    Files.createDirectories(dir.resolve("parts"));
+    Files.writeString(dir.resolve("parts/menu.html"), "menu1");
+    Path page = Files.writeString(dir.resolve("page.html"),
+        "@cache(\"nav\")<nav>@include(\"parts/menu.html\")</nav>@endcache@cache(\"outer\")[@cache(\"inner\")@include(\"parts/menu.html\")@endcache]@endcache");
+    Path other = Files.writeString(dir.resolve("other.html"), "@cache(\"footer\")foot1@endcache");
+    TemplateCache cache = new TemplateCache(dir, false, false, true);
+    FragmentCache fc = new FragmentCache(0);
+    TemplateProcessor p = processor(cache, fc);
+    assertEquals("<nav>menu1</nav>[menu1]", render(p, page, Map.of()));
+    assertEquals("foot1", render(p, other, Map.of()));
+
+    Files.writeString(dir.resolve("parts/menu.html"), "menu2");
+    Files.writeString(other, "@cache(\"footer\")foot2@endcache");
+    cache.invalidate(dir.resolve("parts/menu.html"));
+    // el include cambió: caen nav, inner y outer (que contiene a inner); footer sigue
+    assertEquals("<nav>menu2</nav>[menu2]", render(p, page, Map.of()));
+    assertNotNull(fc.get("footer"));
+    assertEquals("foot1", render(p, other, Map.of()));
+
+    cache.invalidate(other);
+    assertEquals("foot2", render(p, other, Map.of()));
+    assertNotNull(fc.get("nav"));
+  }
+}
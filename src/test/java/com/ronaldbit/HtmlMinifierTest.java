@@ -0,0 +1,39 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlMinifierTest {
+  private final Mopla mopla = Mopla.builder().minify(true).build();
+
+  private String min(String tpl) throws Exception {
+    return mopla.renderString(tpl, Map.of("x", "X"));
+  }
+
+  @Test
+  void keepsSpaceBetweenInlineElements() throws Exception {
+    assertEquals("<a href=\"/\">Home</a>\n<a href=\"/about\">About</a>",
+        min("<a href=\"/\">Home</a>\n  <a href=\"/about\">About</a>"));
+    assertEquals("<b>World</b>\n<i>again</i>", min("<b>World</b>\n<i>again</i>"));
+    assertEquals("<span>@</span>\n<em>X</em>", min("<span>@</span>\n    <em>@var(x)</em>"));
+  }
+
+  @Test
+  void dropsIndentationNextToBlockElements() throws Exception {
+    assertEquals("<ul><li><a href=\"/\">Home</a></li><li>b</li></ul>",
+        min("<ul>\n  <li><a href=\"/\">Home</a></li>\n  <li>b</li>\n</ul>"));
+    assertEquals("<p>a</p><span>b</span>", min("<p>a</p>\n<span>b</span>"));
+    assertEquals("<!DOCTYPE html><html>", min("<!DOCTYPE html>\n<html>"));
+  }
+
+  @Test
+  void collapsesOtherWhitespaceAndKeepsRawContent() throws Exception {
+    assertEquals("<p>Hola, mundo</p>", min("<p>Hola,    mundo</p>"));
+    assertEquals("<pre>  a\n   b</pre>", min("<pre>  a\n   b</pre>"));
+    assertEquals("<p class=\"a   b\">X</p>", min("<p   class=\"a   b\">@var(x)</p>"));
+    assertEquals("<div><p>a</p></div>", min("<div><!-- nota -->\n<p>a</p></div>"));
+  }
+}
@@ -0,0 +1,113 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayoutPlanTest {
+  @TempDir Path dir;
+
+  /** Guarda cuántos bytes había escritos en cada flush(). */
+  static final class FlushLog extends ByteArrayOutputStream {
+    final List<Integer> flushes = new ArrayList<>();
+    @Override public void flush() { flushes.add(size()); }
+    String text() { return toString(StandardCharsets.UTF_8); }
+  }
+
+  @Test
+  void childFlushKeepsStreamingAfterTierUp() throws Exception {
+    Files.writeString(dir.resolve("layout.html"), "<html><head><title>t</title></head><body>@yield(\"main\")</body></html>");
+    Files.writeString(dir.resolve("page.html"), "@extend(\"layout.html\")@section(\"main\")<p>a</p>@flush<p>b</p>@endsection");
+    Mopla m = Mopla.builder().templatesRoot(dir.toString()).devMode(false).jitThreshold(2).build();
+
+    List<Integer> first = null;
+    for (int i=0;i<5;i++) {
+      FlushLog out = new FlushLog();
+      m.render("page.html", Map.of(), out);
+      assertEquals("<html><head><title>t</title></head><body><p>a</p><p>b</p></body></html>", out.text());
+      if (first == null) first = out.flushes;
+      else assertEquals(first, out.flushes, "render " + i);
+    }
+    assertEquals(List.of(49, 71), first);
+  }
+
+  private static TemplateProcessor processor(Path root, TemplateCache cache, boolean devMode, int jitThreshold) {
+    return new TemplateProcessor(root, TemplateSource.FILES, cache, new FragmentCache(0), new HashMap<>(), new AtomicLong(),
+        devMode, null, jitThreshold, null, false, false, null);
+  }
+
+  private static String render(TemplateProcessor p, Path file) throws Exception {
+    return p.render(p.load(file), Scope.root(null, Map.of(), Map.of("x", "p")));
+  }
+
+  private static void chain(Path d) throws Exception {
+    Files.writeString(d.resolve("base.html"), "B[@yield(\"body\")]");
+    Files.writeString(d.resolve("mid.html"), "@extend(\"base.html\")@section(\"body\")M[@yield(\"main\")]@endsection");
+    Files.writeString(d.resolve("page.html"), "@extend(\"mid.html\")@section(\"main\")@var(x)@endsection");
+  }
+
+  @Test
+  void productionPlanIsRebuiltWhenALayoutInTheChainIsInvalidated() throws Exception {
+    chain(dir);
+    for (int jit : new int[] { 0, 1 }) {
+      TemplateCache cache = new TemplateCache(dir, true, false, true);
+      TemplateProcessor p = processor(dir, cache, false, jit);
+      Path page = dir.resolve("page.html");
+      assertEquals("B[M[p]]", render(p, page));
+      assertEquals("B[M[p]]", render(p, page));
+
+      Files.writeString(dir.resolve("base.html"), "<b>@yield(\"body\")</b>");
+      // sin invalidar, producción sigue con el plan cacheado
+      assertEquals("B[M[p]]", render(p, page));
+      cache.invalidate(dir.resolve("base.html"));
+      assertEquals("<b>M[p]</b>", render(p, page), "jit=" + jit);
+
+      Files.writeString(dir.resolve("mid.html"), "@extend(\"base.html\")@section(\"body\")m(@yield(\"main\"))@endsection");
+      cache.invalidate(dir.resolve("mid.html"));
+      assertEquals("<b>m(p)</b>", render(p, page), "jit=" + jit);
+      chain(dir);
+    }
+  }
+
+  @Test
+  void devModePlanNoticesAReloadedLayoutWhileTheChildStaysCached() throws Exception {
+    // templatesRoot = directorio de trabajo: el cache compara lastModified en cada hit (sin watcher)
+    Path cwd = Path.of("").toAbsolutePath().normalize();
+    Path d = Files.createTempDirectory(Files.createDirectories(cwd.resolve("target")), "layout");
+    TemplateCache cache = new TemplateCache(cwd, true, true, true);
+    try {
+      chain(d);
+      TemplateProcessor p = processor(cwd, cache, true, 0);
+      Files.writeString(d.resolve("mid.html"), "@extend(\"" + cwd.relativize(d.resolve("base.html")).toString().replace('\\', '/')
+          + "\")@section(\"body\")M[@yield(\"main\")]@endsection");
+      Files.writeString(d.resolve("page.html"), "@extend(\"" + cwd.relativize(d.resolve("mid.html")).toString().replace('\\', '/')
+          + "\")@section(\"main\")@var(x)@endsection");
+      Path page = d.resolve("page.html");
+      CompiledTemplate before = p.load(page);
+      assertEquals("B[M[p]]", render(p, page));
+
+      Path base = d.resolve("base.html");
+      Files.writeString(base, "<b>@yield(\"body\")</b>");
+      Files.setLastModifiedTime(base, FileTime.fromMillis(Files.getLastModifiedTime(base).toMillis() + 5000));
+      assertSame(before, p.load(page));
+      assertEquals("<b>M[p]</b>", render(p, page));
+    } finally {
+      cache.close();
+      try (var files = Files.walk(d)) {
+        files.sorted(java.util.Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+      }
+    }
+  }
+}
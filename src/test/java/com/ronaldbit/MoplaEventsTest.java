@@ -0,0 +1,50 @@
+package com.ronaldbit.mopla;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoplaEventsTest {
+  @TempDir Path dir;
+
+  @Test
+  void eventsAreOffWithoutRecording() {
+    assertFalse(MoplaEvents.enabled(MoplaEvents.RENDER));
+    assertFalse(MoplaEvents.enabled(MoplaEvents.FILTER));
+  }
+
+  @Test
+  void eventsAreCommittedWhileRecording() throws Exception {
+    Files.writeString(dir.resolve("layout.html"), "<main>@yield(\"main\")</main>");
+    Files.writeString(dir.resolve("part.html"), "<i>@var(x|upper)</i>");
+    Files.writeString(dir.resolve("page.html"), "@extend(\"layout.html\")@section(\"main\")@include(\"part.html\")@endsection");
+    Mopla m = Mopla.builder().templatesRoot(dir.toString()).devMode(false).build();
+
+    Path jfr = dir.resolve("out.jfr");
+    try (Recording r = new Recording()) {
+      for (String e : List.of("Render", "Include", "Layout", "Filter", "TemplateLoad")) {
+        r.enable("com.ronaldbit.mopla." + e).withThreshold(java.time.Duration.ZERO);
+      }
+      r.start();
+      assertEquals("<main><i>A</i></main>", m.render("page.html", Map.of("x", "a")));
+      r.stop();
+      r.dump(jfr);
+    }
+    Set<String> names = RecordingFile.readAllEvents(jfr).stream()
+        .map(RecordedEvent::getEventType).map(t -> t.getName())
+        .collect(Collectors.toSet());
+    assertEquals(Set.of("com.ronaldbit.mopla.Render", "com.ronaldbit.mopla.Include", "com.ronaldbit.mopla.Layout",
+        "com.ronaldbit.mopla.Filter", "com.ronaldbit.mopla.TemplateLoad"), names);
+  }
+}
@@ -0,0 +1,101 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrecompiledTemplateTest {
+  @TempDir Path dir;
+
+  /** FILES que anota cada lectura (texto y binaria) por nombre de archivo. */
+  static final class Recording implements TemplateSource {
+    final List<String> reads = new ArrayList<>();
+    final List<String> byteReads = new ArrayList<>();
+    @Override public String read(Path p) throws IOException { reads.add(p.getFileName().toString()); return FILES.read(p); }
+    @Override public byte[] readBytes(Path p) throws IOException { byteReads.add(p.getFileName().toString()); return FILES.readBytes(p); }
+    @Override public long size(Path p) throws IOException { return FILES.size(p); }
+  }
+
+  private static final Map<String, Filter> FILTERS = new HashMap<>();
+  static { DefaultFilters.registerAll(FILTERS); }
+
+  private TemplateProcessor processor(TemplateSource src, boolean devMode) {
+    return new TemplateProcessor(dir, src, new TemplateCache(dir, false, devMode, true), new FragmentCache(0), FILTERS,
+        new AtomicLong(), devMode, null, 0, null, false, false, null);
+  }
+
+  private static String render(TemplateProcessor p, Path file) throws Exception {
+    return p.render(p.load(file), Scope.root(null, Map.of(), Map.of("items", List.of("a", "b"), "title", "ñandú")));
+  }
+
+  private void templates() throws Exception {
+    Files.writeString(dir.resolve("layout.html"), "<title>@var(title|upper)</title>@yield(\"main\")");
+    Files.writeString(dir.resolve("part.html"), "@foreach(i in items)<i>@var(i)</i>@endforeach");
+    Files.writeString(dir.resolve("page.html"), "@extend(\"layout.html\")@section(\"main\")@include(\"part.html\")"
+        + "@cache(\"k\")c@endcache@if(title)!@endif@endsection");
+  }
+
+  @Test
+  void productionLoadsPrecompiledFormWithoutReadingTheSource() throws Exception {
+    templates();
+    String parsed = render(processor(TemplateSource.FILES, false), dir.resolve("page.html"));
+    assertEquals("<title>ÑANDÚ</title><i>a</i><i>b</i>c!", parsed);
+
+    assertEquals(List.of(), TemplatePrecompiler.precompile(dir, dir));
+    assertTrue(Files.exists(dir.resolve("page.html.mplc")));
+    assertTrue(Files.exists(dir.resolve(PrecompiledTemplate.INDEX)));
+
+    Recording src = new Recording();
+    TemplateProcessor p = processor(src, false);
+    assertEquals(parsed, render(p, dir.resolve("page.html")));
+    assertEquals(List.of(), src.reads);
+    // misma versión (ETag) que si se hubiera parseado
+    assertEquals(ETags.hash(Files.readString(dir.resolve("page.html"))), p.load(dir.resolve("page.html")).version);
+    // el índice se lee una sola vez
+    assertEquals(1, src.byteReads.stream().filter(PrecompiledTemplate.INDEX::equals).count());
+  }
+
+  @Test
+  void templateWithAnotherSizeFallsBackToParsing() throws Exception {
+    templates();
+    TemplatePrecompiler.precompile(dir, dir);
+    Files.writeString(dir.resolve("part.html"), "@foreach(i in items)[@var(i)]@endforeach");
+
+    Recording src = new Recording();
+    assertEquals("<title>ÑANDÚ</title>[a][b]c!", render(processor(src, false), dir.resolve("page.html")));
+    assertEquals(List.of("part.html"), src.reads);
+  }
+
+  @Test
+  void devModeAndMissingIndexParseWithoutLookingForMplc() throws Exception {
+    templates();
+    TemplatePrecompiler.precompile(dir, dir);
+    Recording dev = new Recording();
+    render(processor(dev, true), dir.resolve("page.html"));
+    assertEquals(List.of("page.html", "layout.html", "part.html"), dev.reads);
+    assertEquals(List.of(), dev.byteReads);
+
+    Files.delete(dir.resolve(PrecompiledTemplate.INDEX));
+    Recording prod = new Recording();
+    render(processor(prod, false), dir.resolve("page.html"));
+    assertEquals(3, prod.reads.size());
+    assertEquals(List.of(PrecompiledTemplate.INDEX), prod.byteReads);
+  }
+
+  @Test
+  void indexAndMplcAreNotTemplates() throws Exception {
+    templates();
+    TemplatePrecompiler.precompile(dir, dir);
+    assertEquals(List.of(dir.resolve("layout.html"), dir.resolve("page.html"), dir.resolve("part.html")), TemplateSource.FILES.list(dir));
+  }
+}
@@ -0,0 +1,47 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScopeCascadeTest {
+  private final Mopla mopla = new Mopla(".");
+
+  private static MoplaContext ctxWithReq(String key, Object value) {
+    MoplaContext ctx = new MoplaContext();
+    ctx.req().put(key, value);
+    return ctx;
+  }
+
+  @Test
+  void requestParamDoesNotOverrideModel() throws Exception {
+    String tpl = "@if(isAdmin)ADMIN PANEL@else user@endif";
+    assertEquals(" user", mopla.renderString(tpl, ctxWithReq("isAdmin", "true"), Map.of("isAdmin", false)));
+  }
+
+  @Test
+  void requestParamDoesNotOverrideLoopVariable() throws Exception {
+    String tpl = "@foreach(tag in tags)[@var(tag)]@endforeach";
+    assertEquals("[a][b]", mopla.renderString(tpl, ctxWithReq("tag", "<evil>"), Map.of("tags", List.of("a", "b"))));
+  }
+
+  @Test
+  void requestParamDoesNotOverrideWithOrSet() throws Exception {
+    MoplaContext ctx = ctxWithReq("x", "req");
+    assertEquals("with", mopla.renderString("@with(x:\"with\")@var(x)@endwith", ctx, Map.of()));
+    assertEquals("set", mopla.renderString("@set(\"x\",\"set\")@var(x)", ctx, Map.of()));
+  }
+
+  @Test
+  void contextIsFallbackAndPrefixIsExplicit() throws Exception {
+    MoplaContext ctx = ctxWithReq("tag", "r");
+    ctx.session().put("user", "s");
+    ctx.app().put("name", "a");
+    ctx.app().put("tag", "app");
+    assertEquals("r s a", mopla.renderString("@var(tag) @var(user) @var(name)", ctx, Map.of()));
+    assertEquals("m r app", mopla.renderString("@var(tag) @var(req.tag) @var(app.tag)", ctx, Map.of("tag", "m")));
+  }
+}
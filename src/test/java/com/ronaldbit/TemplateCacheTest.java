@@ -0,0 +1,141 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateCacheTest {
+  @TempDir Path dir;
+
+  @Test
+  void sizeHintsSkipMissingTemplates() throws Exception {
+    Files.writeString(dir.resolve("page.html"), "<p>@var(x)</p>@include(\"nope.html\")");
+    Mopla m = Mopla.builder().templatesRoot(dir.toString()).devMode(false).build();
+    assertEquals("<p>1</p>", m.render("page.html", Map.of("x", 1)));
+    Map<String,Integer> hints = m.outputSizeHints();
+    assertEquals(Set.of("page.html"), hints.keySet());
+    assertTrue(hints.get("page.html") > 0);
+  }
+
+  @Test
+  void devModeWithoutRootPollsInsteadOfWatchingWorkingDirectory() throws Exception {
+    Path cwd = Path.of("").toAbsolutePath().normalize();
+    TemplateCache c = new TemplateCache(cwd, true, true, true);
+    Path p = Files.createTempFile(cwd.resolve("target"), "poll", ".html");
+    try {
+      Files.writeString(p, "a");
+      assertNotNull(c.compiledCached(p, TemplateSource.FILES, txt -> TemplateParser.parse("poll", txt, Map.of())));
+      assertFalse(Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals("mopla-template-watcher")));
+    } finally {
+      c.close();
+      Files.deleteIfExists(p);
+    }
+  }
+
+  /* ========== SLRU ========== */
+
+  private final AtomicInteger compiles = new AtomicInteger();
+
+  private final Function<String,CompiledTemplate> parser = txt -> {
+    compiles.incrementAndGet();
+    return TemplateParser.parse("t", txt, Map.of());
+  };
+
+  // 100 caracteres: peso 3*100 + 256
+  private static final long PAGE_WEIGHT = 556;
+
+  private Path page(String name) throws Exception {
+    return Files.writeString(dir.resolve(name), "x".repeat(100));
+  }
+
+  /** true si fue un hit (no se volvió a compilar). */
+  private boolean hit(TemplateCache c, Path p) throws Exception {
+    int before = compiles.get();
+    c.compiledCached(p, TemplateSource.FILES, parser);
+    return compiles.get() == before;
+  }
+
+  @Test
+  void slruPromotesARevisitedEntryAndEvictsTheColdOne() throws Exception {
+    TemplateCache c = new TemplateCache(dir, false, false, true, 0, 5);
+    Path[] p = new Path[7];
+    for (int i=0;i<p.length;i++) p[i] = page("p" + i + ".html");
+    for (int i=0;i<5;i++) assertFalse(hit(c, p[i]));
+    assertTrue(hit(c, p[0]));               // p0 marcada
+
+    assertFalse(hit(c, p[5]));              // p0 pasa a protected, sale p1 (la más vieja sin uso)
+    assertEquals(1, c.stats().evictions());
+    assertEquals(5, c.stats().size());
+    assertTrue(hit(c, p[0]));
+    assertTrue(hit(c, p[2]));
+
+    assertFalse(hit(c, p[6]));              // p2 se promueve, sale p3
+    assertTrue(hit(c, p[0]));
+    assertTrue(hit(c, p[2]));
+    assertTrue(hit(c, p[4]));
+    assertFalse(hit(c, p[3]));
+    assertEquals(3, c.stats().evictions());
+  }
+
+  @Test
+  void weightCountsSourceSizeAndMissingEntries() throws Exception {
+    TemplateCache c = new TemplateCache(dir, false, false, true, 3 * PAGE_WEIGHT, 0);
+    Path a = page("a.html"), b = page("b.html"), d = page("d.html"), e = page("e.html");
+    assertFalse(hit(c, a));
+    assertNull(c.compiledCached(dir.resolve("nope.html"), TemplateSource.FILES, parser));
+    assertEquals(PAGE_WEIGHT + 64, c.stats().weight());
+    assertEquals(2, c.stats().size());
+
+    c.invalidate(dir.resolve("nope.html"));
+    assertEquals(PAGE_WEIGHT, c.stats().weight());
+
+    hit(c, b); hit(c, d);
+    assertEquals(3 * PAGE_WEIGHT, c.stats().weight());
+    assertEquals(0, c.stats().evictions());
+    hit(c, e);                              // se pasa del límite: sale a
+    assertEquals(3 * PAGE_WEIGHT, c.stats().weight());
+    assertEquals(1, c.stats().evictions());
+    assertFalse(hit(c, a));
+  }
+
+  @Test
+  void loadRacingAnInvalidationIsNotCached() throws Exception {
+    TemplateCache c = new TemplateCache(dir, false, false, true);
+    Path a = page("a.html");
+    Function<String,CompiledTemplate> racing = txt -> {
+      c.invalidate(dir.resolve("other.html")); // cambio mientras se compilaba
+      return parser.apply(txt);
+    };
+    assertNotNull(c.compiledCached(a, TemplateSource.FILES, racing));
+    assertEquals(0, c.stats().size());
+    assertFalse(hit(c, a));                 // no quedó la versión cruzada
+    assertTrue(hit(c, a));
+  }
+
+  @Test
+  void statsCountHitsMissesAndLoads() throws Exception {
+    TemplateCache c = new TemplateCache(dir, false, false, true);
+    Path a = page("a.html"), b = page("b.html");
+    hit(c, a); hit(c, a); hit(c, a); hit(c, b);
+    CacheStats s = c.stats();
+    assertEquals(2, s.hits());
+    assertEquals(2, s.misses());
+    assertEquals(2, s.loads());
+    assertEquals(0.5, s.hitRate());
+    assertEquals(2, s.size());
+    assertEquals(2 * PAGE_WEIGHT, s.weight());
+    assertEquals(TemplateCache.DEFAULT_MAX_WEIGHT, s.maxWeight());
+
+    c.clear();
+    assertEquals(0, c.stats().size());
+    assertEquals(0, c.stats().weight());
+  }
+}
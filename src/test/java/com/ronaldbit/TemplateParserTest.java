@@ -0,0 +1,48 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateParserTest {
+  private final Mopla mopla = new Mopla(".");
+
+  private String render(String tpl, Map<String,Object> vars) throws Exception {
+    return mopla.renderString(tpl, vars);
+  }
+
+  @Test
+  void emailsStayLiteral() throws Exception {
+    assertEquals("escribe a info@elsevier.com", render("escribe a info@elsevier.com", Map.of()));
+    assertEquals("a@else.com y b@endif.org", render("a@else.com y b@endif.org", Map.of()));
+    assertEquals("x@flush.io", render("x@flush.io", Map.of()));
+  }
+
+  @Test
+  void closerPrefixedWordsStayLiteral() throws Exception {
+    assertEquals("x@endifyz @elsewhere @endforeach_x", render("x@endifyz @elsewhere @endforeach_x", Map.of()));
+  }
+
+  @Test
+  void closersInsideBlocksStillWork() throws Exception {
+    String tpl = "@if(ok)si, info@elsevier.com@else no@endif.";
+    assertEquals("si, info@elsevier.com.", render(tpl, Map.of("ok", true)));
+    assertEquals(" no.", render(tpl, Map.of("ok", false)));
+  }
+
+  @Test
+  void strayCloserIsSyntaxError() {
+    TemplateSyntaxException e = assertThrows(TemplateSyntaxException.class, () -> render("a\n@endif", Map.of()));
+    assertEquals(2, e.line());
+  }
+
+  @Test
+  void invalidFilterArgumentIsSyntaxErrorWithPosition() {
+    TemplateSyntaxException e = assertThrows(TemplateSyntaxException.class,
+        () -> mopla.renderString("<p>\n@if(never)@var(d|date:\"yyyy-MM-dd'\")@endif</p>", Map.of()));
+    assertEquals(2, e.line());
+    assertTrue(e.getMessage().startsWith("<string>:2: Filtro inválido en @var(d|date:"), e.getMessage());
+  }
+}
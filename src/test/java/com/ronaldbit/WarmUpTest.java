@@ -0,0 +1,37 @@
+package com.ronaldbit.mopla;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WarmUpTest {
+  @TempDir Path dir;
+
+  @Test
+  void syntheticRendersDoNotStoreFragmentsOrRecordMetrics() throws Exception {
+    Files.writeString(dir.resolve("footer.html"), "<footer>@cache(\"footer\")(c) @var(app.company|upper)@endcache</footer>");
+    Files.writeString(dir.resolve("page.html"), "@include(\"footer.html\")");
+    InMemoryMetrics metrics = new InMemoryMetrics();
+    Mopla m = Mopla.builder().templatesRoot(dir.toString()).devMode(false)
+        .metrics(metrics).warmUp(true).warmUpRenders(3).build();
+
+    assertEquals(6, m.lastWarmUp().renders());
+    assertEquals(0, m.fragmentStats().size());
+    MetricsSnapshot s = metrics.snapshot();
+    s.templates().values().forEach(t -> {
+      assertEquals(0, t.render().count());
+      assertEquals(0, t.include().count());
+    });
+    assertTrue(s.filters().isEmpty());
+
+    MoplaContext ctx = new MoplaContext();
+    ctx.app().put("company", "ACME");
+    assertEquals("<footer>(c) ACME</footer>", m.render("page.html", ctx, Map.of()));
+    assertEquals(1, metrics.snapshot().templates().get("page.html").render().count());
+  }
+}
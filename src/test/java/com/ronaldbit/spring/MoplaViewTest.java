@@ -0,0 +1,95 @@
+package com.ronaldbit.spring;
+
+import com.ronaldbit.mopla.Mopla;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoplaViewTest {
+  @TempDir Path dir;
+
+  /** Respuesta mínima: status, headers y cuerpo. */
+  static final class Response {
+    int status = HttpServletResponse.SC_OK;
+    final Map<String,String> headers = new HashMap<>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    HttpServletResponse proxy() {
+      ServletOutputStream out = new ServletOutputStream() {
+        @Override public boolean isReady() { return true; }
+        @Override public void setWriteListener(WriteListener l) {}
+        @Override public void write(int b) { body.write(b); }
+      };
+      return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+          (self, m, args) -> switch (m.getName()) {
+            case "getStatus" -> status;
+            case "setStatus" -> { status = (Integer) args[0]; yield null; }
+            case "setHeader", "addHeader" -> { headers.put((String) args[0], (String) args[1]); yield null; }
+            case "getOutputStream" -> out;
+            default -> null;
+          });
+    }
+  }
+
+  private static HttpServletRequest get(Map<String,String> headers) {
+    return (HttpServletRequest) Proxy.newProxyInstance(MoplaViewTest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+        (self, m, args) -> switch (m.getName()) {
+          case "getMethod" -> "GET";
+          case "getHeader" -> headers.get((String) args[0]);
+          case "getParameterMap" -> Map.of();
+          default -> null;
+        });
+  }
+
+  private Response render(MoplaViewResolver resolver, Map<String,String> headers) throws Exception {
+    Response r = new Response();
+    resolver.resolveViewName("landing", null).render(new HashMap<>(), get(headers), r.proxy());
+    return r;
+  }
+
+  @Test
+  void gzipVariantHasItsOwnEtag() throws Exception {
+    Files.writeString(dir.resolve("landing.html"), "<p>" + "hola mundo ".repeat(50) + "</p>");
+    Mopla m = Mopla.builder().templatesRoot(dir.toString()).devMode(false).build();
+    MoplaViewResolver resolver = new MoplaViewResolver(m);
+    resolver.setEtag(true);
+
+    Response plain = render(resolver, Map.of());
+    String tag = plain.headers.get("ETag");
+    assertNotNull(tag);
+    assertNull(plain.headers.get("Content-Encoding"));
+
+    Response gz = render(resolver, Map.of("Accept-Encoding", "gzip"));
+    assertEquals("gzip", gz.headers.get("Content-Encoding"));
+    String gzTag = gz.headers.get("ETag");
+    assertEquals(PrecompressedPages.gzipTag(tag), gzTag);
+    assertNotEquals(tag, gzTag);
+    assertTrue(gz.body.size() < plain.body.size());
+
+    // cada copia revalida con su propio tag
+    Response notModified = render(resolver, Map.of("Accept-Encoding", "gzip", "If-None-Match", gzTag));
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.status);
+    assertEquals(gzTag, notModified.headers.get("ETag"));
+    assertEquals(0, notModified.body.size());
+    Response identity = render(resolver, Map.of("If-None-Match", tag));
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, identity.status);
+    assertEquals(tag, identity.headers.get("ETag"));
+  }
+
+  @Test
+  void gzipTagKeepsTheWeakPrefix() {
+    assertEquals("W/\"abc-gzip\"", PrecompressedPages.gzipTag("W/\"abc\""));
+  }
+}